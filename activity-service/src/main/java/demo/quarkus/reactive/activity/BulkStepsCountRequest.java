@@ -0,0 +1,7 @@
+package demo.quarkus.reactive.activity;
+
+import java.util.List;
+
+// The year, month and day are only required for the matching periods
+public record BulkStepsCountRequest(List<String> deviceIds, String period, Integer year, Integer month, Integer day) {
+}
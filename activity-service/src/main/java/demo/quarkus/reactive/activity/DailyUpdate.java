@@ -0,0 +1,5 @@
+package demo.quarkus.reactive.activity;
+
+// Daily steps count of a device, published on every change (the timestamp is an ISO-8601 date-time with offset)
+public record DailyUpdate(String deviceId, String timestamp, long stepsCount) {
+}
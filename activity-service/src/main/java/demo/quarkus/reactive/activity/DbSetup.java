@@ -1,17 +1,33 @@
 package demo.quarkus.reactive.activity;
 
+import io.quarkus.logging.Log;
 import io.quarkus.runtime.StartupEvent;
 import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.Tuple;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 
+import java.time.LocalDate;
+import java.time.YearMonth;
+
 @ApplicationScoped
 public class DbSetup {
 
+  private static final int MIGRATION_BATCH = 10_000;
+  private static final long PROGRESS_EVERY = 1_000_000L;
+
   @Inject
   PgPool client;
 
+  @Inject
+  PartitionManager partitionManager;
+
+  @Inject
+  Leaderboard leaderboard;
+
   void config(@Observes StartupEvent ev) {
     initDb();
   }
@@ -19,5 +35,68 @@ public class DbSetup {
   private void initDb() {
     client.query(SqlQueries.initDb()).execute()
       .await().indefinitely();
+    // Partitions must exist before the first insert, otherwise rows end up in the default partition
+    partitionManager.maintain()
+      .await().indefinitely();
+    migrateUnpartitioned();
+    backfillDailySteps();
+    leaderboard.rebuild()
+      .await().indefinitely();
+  }
+
+  // A stepevent table created before partitioning has been set aside by initDb, its rows are moved to the partitioned
+  // table (seeding the ledger with them)
+  private void migrateUnpartitioned() {
+    boolean legacy = client.query(SqlQueries.hasUnpartitionedStepEvents()).execute()
+      .onItem().transform(rs -> rs.iterator().next().getBoolean(0))
+      .await().indefinitely();
+    if (!legacy) {
+      return;
+    }
+    // The partitioned table is new, so the months of the former events can get partitions (the default partition is
+    // empty)
+    Row days = client.query(SqlQueries.unpartitionedStepEventDays()).execute()
+      .await().indefinitely()
+      .iterator().next();
+    LocalDate first = days.getLocalDate("first");
+    if (first != null) {
+      partitionManager.createPartitions(YearMonth.from(first), YearMonth.from(days.getLocalDate("last")))
+        .await().indefinitely();
+    }
+    // Rows are moved in batches of their own transaction, so that the WAL is written steadily and a failure only
+    // loses the current batch. After a restart, the rows already moved are skipped by the ledger.
+    Log.info("Moving the rows of stepevent_unpartitioned to the partitioned table");
+    long moved = 0L;
+    Row last = null;
+    while (true) {
+      RowSet<Row> batch = (last == null)
+        ? client.preparedQuery(SqlQueries.migrateUnpartitionedStepEvents(false))
+          .execute(Tuple.of(MIGRATION_BATCH)).await().indefinitely()
+        : client.preparedQuery(SqlQueries.migrateUnpartitionedStepEvents(true))
+          .execute(Tuple.of(MIGRATION_BATCH, last.getString("device_id"), last.getLong("device_sync"))).await().indefinitely();
+      if (batch.size() == 0) {
+        break;
+      }
+      last = batch.iterator().next();
+      moved += last.getLong("rows");
+      if (moved % PROGRESS_EVERY < MIGRATION_BATCH) {
+        Log.info("Moved " + moved + " rows of stepevent_unpartitioned");
+      }
+    }
+    client.query(SqlQueries.dropTable("stepevent_unpartitioned")).execute()
+      .await().indefinitely();
+    Log.info("Moved " + moved + " rows of stepevent_unpartitioned, and dropped it");
+  }
+
+  private void backfillDailySteps() {
+    // daily_steps is maintained incrementally, it only needs to be computed from stepevent when it is new
+    boolean empty = client.query(SqlQueries.dailyStepsIsEmpty()).execute()
+      .onItem().transform(rs -> rs.iterator().next().getBoolean(0))
+      .await().indefinitely();
+    if (empty) {
+      Log.info("Backfilling the daily_steps table");
+      client.query(SqlQueries.rebuildDailySteps()).execute()
+        .await().indefinitely();
+    }
   }
 }
@@ -1,7 +1,9 @@
 package demo.quarkus.reactive.activity;
 
 import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.pgclient.PgPool;
 import io.vertx.mutiny.sqlclient.Row;
@@ -9,21 +11,43 @@ import io.vertx.mutiny.sqlclient.RowSet;
 import io.vertx.mutiny.sqlclient.Tuple;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
+import org.jboss.resteasy.reactive.RestQuery;
 import org.jboss.resteasy.reactive.RestResponse;
+import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
 
 import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Optional;
 
 @Path("device")
 public class DeviceResource {
 
+  private static final Map<String, ChronoUnit> SERIES_BUCKETS = Map.of(
+    "hour", ChronoUnit.HOURS,
+    "day", ChronoUnit.DAYS,
+    "week", ChronoUnit.WEEKS,
+    "month", ChronoUnit.MONTHS);
+
+  private static final long MAX_SERIES_BUCKETS = 10_000L;
+
   @Inject
   PgPool pgPool;
 
+  @Inject
+  StepsCountCache cache;
+
   @Path("{deviceId}/total")
   @GET
   @Produces(MediaType.APPLICATION_JSON)
@@ -31,8 +55,7 @@ public class DeviceResource {
     Log.info("Total steps for deviceId=" + deviceId);
 
     Tuple params = Tuple.of(deviceId);
-    return pgPool.preparedQuery(SqlQueries.totalStepsCount())
-      .execute(params)
+    return cache.get(StepsCountCache.Key.total(deviceId), () -> count(SqlQueries.totalStepsCount(), params))
       .onItem().transform(DeviceResource::countResponse);
   }
 
@@ -43,10 +66,10 @@ public class DeviceResource {
     Log.info("Steps for year=" + year + " month=" + month + " deviceId=" + deviceId);
 
     try {
-      LocalDateTime dateTime = LocalDateTime.of(year, month, 1, 0, 0);
-      Tuple params = Tuple.of(deviceId, dateTime);
-      return pgPool.preparedQuery(SqlQueries.monthlyStepsCount())
-        .execute(params)
+      YearMonth yearMonth = YearMonth.of(year, month);
+      LocalDateTime start = yearMonth.atDay(1).atStartOfDay();
+      Tuple params = Tuple.of(deviceId, start, start.plusMonths(1));
+      return cache.get(StepsCountCache.Key.month(deviceId, yearMonth), () -> count(SqlQueries.monthlyStepsCount(), params))
         .onItem().transform(DeviceResource::countResponse);
     } catch (DateTimeException | NumberFormatException e) {
       throw new BadRequestException(e);
@@ -60,22 +83,121 @@ public class DeviceResource {
     Log.info("Steps for year=" + year + " month=" + month + " day=" + day + " deviceId=" + deviceId);
 
     try {
-      LocalDateTime dateTime = LocalDateTime.of(year, month, day, 0, 0);
-      Tuple params = Tuple.of(deviceId, dateTime);
-      return pgPool.preparedQuery(SqlQueries.dailyStepsCount())
-        .execute(params)
+      LocalDate date = LocalDate.of(year, month, day);
+      Tuple params = Tuple.of(deviceId, date);
+      return cache.get(StepsCountCache.Key.day(deviceId, date), () -> count(SqlQueries.dailyStepsCount(), params))
         .onItem().transform(DeviceResource::countResponse);
     } catch (DateTimeException | NumberFormatException e) {
       throw new BadRequestException(e);
     }
   }
 
-  private static RestResponse<JsonObject> countResponse(RowSet<Row> rs) {
-    Row row = rs.iterator().next();
-    Integer count = row.getInteger(0);
-    if (count != null) {
+  @Path("{deviceId}/series")
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  public Uni<JsonArray> series(String deviceId, @RestQuery String from, @RestQuery String to, @RestQuery @DefaultValue("day") String bucket) {
+    Log.info("Steps series for deviceId=" + deviceId + " from=" + from + " to=" + to + " bucket=" + bucket);
+
+    ChronoUnit unit = SERIES_BUCKETS.get(bucket);
+    if (unit == null || from == null || to == null) {
+      throw new BadRequestException("from, to and bucket (hour, day, week or month) are required");
+    }
+    LocalDateTime start = parseDateTime(from);
+    LocalDateTime end = parseDateTime(to);
+    if (!start.isBefore(end) || unit.between(start, end) > MAX_SERIES_BUCKETS) {
+      throw new BadRequestException("from must be before to, with at most " + MAX_SERIES_BUCKETS + " buckets");
+    }
+
+    // The whole series comes from one query, with empty buckets filled by generate_series
+    return pgPool.preparedQuery(SqlQueries.stepsCountSeries())
+      .execute(Tuple.of(deviceId, bucket, start, end))
+      .onItem().transform(rs -> {
+        JsonArray series = new JsonArray();
+        for (Row row : rs) {
+          series.add(new JsonObject()
+            .put("start", row.getLocalDateTime(0).toString())
+            .put("count", row.getLong(1)));
+        }
+        return series;
+      });
+  }
+
+  private static LocalDateTime parseDateTime(String value) {
+    try {
+      return value.contains("T") ? LocalDateTime.parse(value) : LocalDate.parse(value).atStartOfDay();
+    } catch (DateTimeException e) {
+      throw new BadRequestException(e);
+    }
+  }
+
+  @Path("bulk")
+  @POST
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(RestMediaType.APPLICATION_NDJSON)
+  @RestStreamElementType(MediaType.APPLICATION_JSON)
+  public Multi<JsonObject> bulk(BulkStepsCountRequest request) {
+    if (request == null || request.deviceIds() == null || request.deviceIds().isEmpty() || request.period() == null) {
+      throw new BadRequestException("deviceIds and period are required");
+    }
+    Log.info("Bulk steps for period=" + request.period() + " devices=" + request.deviceIds().size());
+
+    String[] deviceIds = request.deviceIds().toArray(new String[0]);
+    String query;
+    Tuple params;
+    try {
+      switch (request.period()) {
+        case "total" -> {
+          query = SqlQueries.bulkTotalStepsCount();
+          params = Tuple.of(deviceIds);
+        }
+        case "month" -> {
+          requireDateFields(request.year(), request.month());
+          LocalDateTime start = YearMonth.of(request.year(), request.month()).atDay(1).atStartOfDay();
+          query = SqlQueries.bulkMonthlyStepsCount();
+          params = Tuple.of(deviceIds, start, start.plusMonths(1));
+        }
+        case "day" -> {
+          requireDateFields(request.year(), request.month(), request.day());
+          query = SqlQueries.bulkDailyStepsCount();
+          params = Tuple.of(deviceIds, LocalDate.of(request.year(), request.month(), request.day()));
+        }
+        default -> throw new BadRequestException("Unknown period: " + request.period());
+      }
+    } catch (DateTimeException e) {
+      throw new BadRequestException(e);
+    }
+
+    // One grouped query for all devices, with rows streamed to the client as they are read
+    return RowStreams.stream(pgPool, query, params)
+      .onItem().transform(row -> new JsonObject()
+        .put("deviceId", row.getString(0))
+        .put("count", row.getLong(1)));
+  }
+
+  private static void requireDateFields(Integer... fields) {
+    for (Integer field : fields) {
+      if (field == null) {
+        throw new BadRequestException("Missing date fields for the requested period");
+      }
+    }
+  }
+
+  private Uni<Optional<Integer>> count(String query, Tuple params) {
+    return pgPool.preparedQuery(query)
+      .execute(params)
+      .onItem().transform(DeviceResource::countOf);
+  }
+
+  private static Optional<Integer> countOf(RowSet<Row> rs) {
+    // Aggregates over no row yield a null sum, while lookups in daily_steps yield no row
+    Integer count = (rs.size() > 0) ? rs.iterator().next().getInteger(0) : null;
+    return Optional.ofNullable(count);
+  }
+
+  private static RestResponse<JsonObject> countResponse(Optional<Integer> count) {
+    if (count.isPresent()) {
       JsonObject payload = new JsonObject()
-        .put("count", count);
+        .put("count", count.get());
       return RestResponse.ResponseBuilder.ok(payload).build();
     }
     return RestResponse.ResponseBuilder.<JsonObject>notFound().build();
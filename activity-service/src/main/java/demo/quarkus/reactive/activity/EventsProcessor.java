@@ -1,24 +1,32 @@
 package demo.quarkus.reactive.activity;
 
 import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
-import io.smallrye.reactive.messaging.kafka.KafkaRecord;
-import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.pgclient.PgPool;
 import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
 import io.vertx.mutiny.sqlclient.Tuple;
-import io.vertx.pgclient.PgException;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import org.eclipse.microprofile.faulttolerance.Retry;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.reactive.messaging.Acknowledgment;
 import org.eclipse.microprofile.reactive.messaging.Incoming;
+import org.eclipse.microprofile.reactive.messaging.Message;
 import org.eclipse.microprofile.reactive.messaging.Outgoing;
 
-import java.time.LocalDateTime;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
-import static java.time.temporal.ChronoUnit.SECONDS;
-import static org.eclipse.microprofile.reactive.messaging.Acknowledgment.Strategy.PRE_PROCESSING;
+import static org.eclipse.microprofile.reactive.messaging.Acknowledgment.Strategy.MANUAL;
 
 @ApplicationScoped
 public class EventsProcessor {
@@ -26,48 +34,130 @@ public class EventsProcessor {
   @Inject
   PgPool pgPool;
 
+  @Inject
+  Leaderboard leaderboard;
+
+  @Inject
+  StepsCountCache cache;
+
+  // Records of a device always go to the same lane, and the lanes of a batch are written concurrently
+  @ConfigProperty(name = "activity.steps.lanes", defaultValue = "4")
+  int lanes;
+
+  // The channel is consumed in batches (one per Kafka poll), acknowledged once their events and activity updates
+  // have been committed
   @Incoming("steps")
-  @Acknowledgment(PRE_PROCESSING)
-  @Retry(delay = 10, delayUnit = SECONDS)
+  @Acknowledgment(MANUAL)
   @Outgoing("records")
-  public Uni<JsonObject> insertRecord(JsonObject data) {
-    Log.info("Incoming steps update: " + data.encode());
-
-    Tuple values = Tuple.of(
-      data.getString("deviceId"),
-      data.getLong("deviceSync"),
-      data.getInteger("stepsCount"));
-
-    return pgPool.preparedQuery(SqlQueries.insertStepEvent())
-      .execute(values)
-      .replaceWith(data)
-      .onFailure(EventsProcessor::isDuplicateKeyInsert).recoverWithItem(data);
+  public Multi<Message<List<StepEvent>>> insertRecords(Multi<Message<List<StepEvent>>> stream) {
+    // Batches are written one after the other, and the device identifier is also the Kafka key, so the records of
+    // a device stay in order
+    return stream.onItem().transformToUniAndConcatenate(this::insertPolledBatch);
+  }
+
+  private Uni<Message<List<StepEvent>>> insertPolledBatch(Message<List<StepEvent>> message) {
+    List<StepEvent> batch = distinctEvents(message.getPayload());
+    Map<Integer, List<StepEvent>> laneBatches = new HashMap<>();
+    for (StepEvent event : batch) {
+      laneBatches.computeIfAbsent(lane(event.deviceId()), k -> new ArrayList<>()).add(event);
+    }
+    return Multi.createFrom().iterable(laneBatches.values())
+      .onItem().transformToUniAndMerge(this::insertBatch)
+      .collect().last()
+      // The outgoing message must be derived from the polled one, as it carries its acknowledgement (and the commit
+      // of its offsets) to the records channel
+      .replaceWith(message.withPayload(batch))
+      // Let the connector failure strategy decide what happens to the batch
+      .onFailure().recoverWithUni(err -> {
+        Log.error("Failed to insert a steps batch of " + batch.size() + " records", err);
+        // A null item does not get emitted
+        return Uni.createFrom().completionStage(() -> message.nack(err))
+          .onItem().<Message<List<StepEvent>>>transform(v -> null);
+      });
+  }
+
+  private record Sync(String deviceId, long deviceSync) {
   }
 
-  private static boolean isDuplicateKeyInsert(Throwable err) {
-    return (err instanceof PgException) && "23505".equals(((PgException) err).getSqlState());
+  // Devices syncing several times with the same data within a batch only count once, and records that could not be
+  // deserialized (null) are skipped
+  private static List<StepEvent> distinctEvents(List<StepEvent> events) {
+    Map<Sync, StepEvent> distinct = new LinkedHashMap<>();
+    for (StepEvent event : events) {
+      if (event == null) {
+        Log.warn("Skipping an invalid step event");
+        continue;
+      }
+      distinct.putIfAbsent(new Sync(event.deviceId(), event.deviceSync()), event);
+    }
+    return new ArrayList<>(distinct.values());
   }
 
-  @Incoming("records")
-  @Outgoing("updates")
-  public Uni<KafkaRecord<String, JsonObject>> generateActivityUpdate(JsonObject data) {
-    Log.info("Incoming activity update: " + data.encode());
+  private int lane(String deviceId) {
+    return Math.floorMod(Objects.hashCode(deviceId), lanes);
+  }
 
-    String deviceId = data.getString("deviceId");
-    LocalDateTime now = LocalDateTime.now();
-    String key = deviceId + ":" + now.getYear() + "-" + now.getMonth() + "-" + now.getDayOfMonth();
+  private Uni<Void> insertBatch(List<StepEvent> batch) {
+    int size = batch.size();
+    String[] deviceIds = new String[size];
+    Long[] deviceSyncs = new Long[size];
+    Integer[] stepsCounts = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      StepEvent event = batch.get(i);
+      deviceIds[i] = event.deviceId();
+      deviceSyncs[i] = event.deviceSync();
+      stepsCounts[i] = event.stepsCount();
+    }
 
-    return pgPool.preparedQuery(SqlQueries.stepsCountForToday())
-      .execute(Tuple.of(deviceId))
-      .onItem().transform(rs -> {
-        Row row = rs.iterator().next();
+    // The step events, the daily totals and the activity updates (in the outbox) are written in the same transaction
+    return pgPool.withTransaction(conn -> conn
+        // Events written by a former batch are filtered out by the stepevent_sync ledger, so the returned rows
+        // are the ones that have actually been written
+        .preparedQuery(SqlQueries.insertStepEvents())
+        .execute(Tuple.of(deviceIds, deviceSyncs, stepsCounts))
+        .onItem().transformToUni(inserted -> {
+          int written = inserted.rowCount();
+          Log.info("Inserted steps batch: size=" + size + " written=" + written + " skipped=" + (size - written));
+          // The outbox gets one update per device of the batch, with its daily total after the batch
+          return conn.preparedQuery(SqlQueries.upsertDailySteps())
+            .execute(dailyStepsIncrements(batch, inserted))
+            .onItem().transform(updates -> new WrittenBatch(inserted, updates.iterator().next().getLocalDate("day")));
+        }))
+      .onItem().invoke(written -> feedLeaderboard(written.inserted()))
+      .call(written -> cache.invalidateCurrentPeriods(writtenDeviceIds(written.inserted()), written.day()))
+      .replaceWithVoid()
+      .onFailure().retry().withBackOff(Duration.ofSeconds(10)).atMost(3);
+  }
 
-        JsonObject payload = new JsonObject()
-          .put("deviceId", deviceId)
-          .put("timestamp", row.getTemporal(0).toString())
-          .put("stepsCount", row.getLong(1));
+  // The day is the one of the database, which the daily totals and the sync timestamps are based on
+  private record WrittenBatch(RowSet<Row> inserted, LocalDate day) {
+  }
 
-        return KafkaRecord.of(key, payload);
-      });
+  private void feedLeaderboard(RowSet<Row> inserted) {
+    for (Row row : inserted) {
+      leaderboard.record(row.getString("device_id"), row.getInteger("steps_count"));
+    }
+  }
+
+  private static Set<String> writtenDeviceIds(RowSet<Row> inserted) {
+    Set<String> deviceIds = new HashSet<>();
+    for (Row row : inserted) {
+      deviceIds.add(row.getString("device_id"));
+    }
+    return deviceIds;
+  }
+
+  private static Tuple dailyStepsIncrements(List<StepEvent> batch, RowSet<Row> inserted) {
+    // Every device of the batch gets a (possibly zero) increment so that its current total is returned
+    Map<String, Long> increments = new LinkedHashMap<>();
+    for (StepEvent event : batch) {
+      increments.put(event.deviceId(), 0L);
+    }
+    for (Row row : inserted) {
+      increments.merge(row.getString("device_id"), row.getLong("steps_count"), Long::sum);
+    }
+    return Tuple.of(
+      increments.keySet().toArray(new String[0]),
+      increments.values().toArray(new Long[0]));
   }
 }
@@ -0,0 +1,57 @@
+package demo.quarkus.reactive.activity;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.json.JsonObject;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+
+@Path("/import")
+public class ImportResource {
+
+  @Inject
+  StepEventImporter importer;
+
+  // One {"deviceId", "deviceSync", "syncTimestamp", "stepsCount"} object per line
+  @Path("/stepevents")
+  @POST
+  @Consumes(RestMediaType.APPLICATION_NDJSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public JsonObject importNdjson(InputStream input) throws SQLException, IOException {
+    Log.info("Step events import (NDJSON)");
+
+    return importEvents(input, StepEventImporter.Format.NDJSON);
+  }
+
+  // deviceId,deviceSync,syncTimestamp,stepsCount lines, with an optional header
+  @Path("/stepevents")
+  @POST
+  @Consumes("text/csv")
+  @Produces(MediaType.APPLICATION_JSON)
+  public JsonObject importCsv(InputStream input) throws SQLException, IOException {
+    Log.info("Step events import (CSV)");
+
+    return importEvents(input, StepEventImporter.Format.CSV);
+  }
+
+  private JsonObject importEvents(InputStream input, StepEventImporter.Format format) throws SQLException, IOException {
+    try {
+      StepEventImporter.Report report = importer.importEvents(input, format);
+      return new JsonObject()
+        .put("read", report.read())
+        .put("written", report.written())
+        .put("elapsedMillis", report.elapsedMillis());
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException(e.getMessage(), e);
+    }
+  }
+}
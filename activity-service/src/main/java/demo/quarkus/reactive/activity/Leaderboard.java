@@ -0,0 +1,183 @@
+package demo.quarkus.reactive.activity;
+
+import io.quarkus.logging.Log;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// In-memory ranking of the devices over the last 24 hours, with one bucket per 10 minutes and per device (the oldest
+// bucket leaves the window as a whole). It only sees the events consumed by this instance, so it is only complete when
+// activity-service runs as a single instance.
+@ApplicationScoped
+public class Leaderboard {
+
+  static final int BUCKET_MINUTES = 10;
+  static final int WINDOW_BUCKETS = 24 * 60 / BUCKET_MINUTES;
+
+  public record Entry(String deviceId, long stepsCount) {
+  }
+
+  private static final class DeviceWindow {
+
+    final String deviceId;
+    final int[] buckets;
+    long lastBucket;
+    long total;
+
+    DeviceWindow(String deviceId, long bucket) {
+      this.deviceId = deviceId;
+      this.buckets = new int[WINDOW_BUCKETS];
+      this.lastBucket = bucket;
+    }
+
+    void advanceTo(long bucket) {
+      if (bucket <= lastBucket) {
+        return;
+      }
+      if (bucket - lastBucket >= WINDOW_BUCKETS) {
+        Arrays.fill(buckets, 0);
+        total = 0L;
+      } else {
+        for (long b = lastBucket + 1; b <= bucket; b++) {
+          int index = bucketIndex(b);
+          total -= buckets[index];
+          buckets[index] = 0;
+        }
+      }
+      lastBucket = bucket;
+    }
+
+    void add(long bucket, int steps) {
+      advanceTo(bucket);
+      if (bucket > lastBucket - WINDOW_BUCKETS) {
+        buckets[bucketIndex(bucket)] += steps;
+        total += steps;
+      }
+    }
+  }
+
+  // Steps count in descending order, then device identifier in ascending order
+  private static final Comparator<Entry> RANKING_ORDER = Comparator
+    .comparingLong(Entry::stepsCount).reversed()
+    .thenComparing(Entry::deviceId);
+
+  @Inject
+  PgPool pgPool;
+
+  // Devices with steps in the window, the others are dropped
+  private Map<String, DeviceWindow> windows = new HashMap<>();
+
+  // Sorted ranking published on each rollover, read without locking
+  private volatile Entry[] ranking = new Entry[0];
+
+  public void record(String deviceId, int steps) {
+    record(deviceId, currentMinute(), steps);
+  }
+
+  synchronized void record(String deviceId, long minute, int steps) {
+    long bucket = Math.floorDiv(minute, BUCKET_MINUTES);
+    DeviceWindow window = windows.get(deviceId);
+    if (window == null) {
+      window = new DeviceWindow(deviceId, bucket);
+      windows.put(deviceId, window);
+    }
+    window.add(bucket, steps);
+    if (window.total <= 0L) {
+      windows.remove(deviceId);
+    }
+  }
+
+  // Steps recorded during a minute are ranked from the next rollover
+  @Scheduled(every = "1m")
+  void expire() {
+    advanceTo(currentMinute());
+  }
+
+  synchronized void advanceTo(long minute) {
+    long bucket = Math.floorDiv(minute, BUCKET_MINUTES);
+    List<Entry> entries = new ArrayList<>(windows.size());
+    Iterator<DeviceWindow> iterator = windows.values().iterator();
+    while (iterator.hasNext()) {
+      DeviceWindow window = iterator.next();
+      window.advanceTo(bucket);
+      if (window.total > 0L) {
+        entries.add(new Entry(window.deviceId, window.total));
+      } else {
+        iterator.remove();
+      }
+    }
+    Entry[] sorted = entries.toArray(new Entry[0]);
+    Arrays.sort(sorted, RANKING_ORDER);
+    ranking = sorted;
+  }
+
+  public List<Entry> top(int offset, int limit) {
+    return top(null, offset, limit);
+  }
+
+  // Entries ranked strictly after the given one (when not null), as in keyset pagination
+  public List<Entry> top(Entry after, int offset, int limit) {
+    Entry[] entries = ranking;
+    int start = (after != null) ? rankAfter(entries, after) : 0;
+    int from = (int) Math.min((long) start + offset, entries.length);
+    int to = (int) Math.min((long) from + limit, entries.length);
+    return List.of(Arrays.copyOfRange(entries, from, to));
+  }
+
+  // Index of the first entry ranked after the given one, which does not need to be in the ranking
+  private static int rankAfter(Entry[] entries, Entry after) {
+    int low = 0;
+    int high = entries.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (RANKING_ORDER.compare(entries[middle], after) <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  public Uni<Void> rebuild() {
+    return pgPool.preparedQuery(SqlQueries.stepsPerMinuteLast24Hours())
+      .execute()
+      .onItem().invoke(rs -> {
+        Leaderboard fresh = new Leaderboard();
+        for (Row row : rs) {
+          fresh.record(row.getString("device_id"), row.getLong("minute"), row.getInteger("steps"));
+        }
+        fresh.advanceTo(currentMinute());
+        swap(fresh);
+        Log.info("Leaderboard rebuilt with " + fresh.windows.size() + " devices");
+      })
+      .replaceWithVoid();
+  }
+
+  private synchronized void swap(Leaderboard other) {
+    // Events recorded between the query and the swap are lost, so rebuilds should only happen on cold starts
+    windows = other.windows;
+    ranking = other.ranking;
+  }
+
+  private static long currentMinute() {
+    return TimeUnit.MILLISECONDS.toMinutes(Instant.now().toEpochMilli());
+  }
+
+  private static int bucketIndex(long bucket) {
+    return (int) Math.floorMod(bucket, (long) WINDOW_BUCKETS);
+  }
+}
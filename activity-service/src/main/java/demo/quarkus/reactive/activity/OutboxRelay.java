@@ -0,0 +1,142 @@
+package demo.quarkus.reactive.activity;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.reactive.messaging.MutinyEmitter;
+import io.smallrye.reactive.messaging.kafka.KafkaRecord;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.reactive.messaging.Channel;
+import org.eclipse.microprofile.reactive.messaging.Incoming;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.quarkus.scheduler.Scheduled.ConcurrentExecution.SKIP;
+
+// Relays the activity updates written to the outbox by the events processor to Kafka, at least once and in order
+@ApplicationScoped
+public class OutboxRelay {
+
+  @Inject
+  PgPool pgPool;
+
+  @Inject
+  @Channel("updates")
+  MutinyEmitter<DailyUpdate> emitter;
+
+  // Kept below the emitter buffer size (256 by default)
+  @ConfigProperty(name = "activity.outbox.batch-size", defaultValue = "200")
+  int batchSize;
+
+  // Renewed by every batch, another instance takes over the relay once it has expired (a batch taking longer to be
+  // sent may then be sent twice, which at-least-once delivery allows)
+  @ConfigProperty(name = "activity.outbox.lease", defaultValue = "1m")
+  Duration lease;
+
+  private final UUID owner = UUID.randomUUID();
+
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private final AtomicBoolean pending = new AtomicBoolean();
+
+  // Called once events have been committed, so that updates do not wait for the next poll
+  public void drainSoon() {
+    pending.set(true);
+    if (draining.compareAndSet(false, true)) {
+      drain();
+    }
+  }
+
+  // Batches are acknowledged once written, as their activity updates are then safely stored in the outbox
+  @Incoming("records")
+  void batchWritten(List<StepEvent> batch) {
+    drainSoon();
+  }
+
+  // Picks up the updates left behind by a crash, or written by another instance
+  @Scheduled(every = "${activity.outbox.poll-every}", concurrentExecution = SKIP)
+  void poll() {
+    drainSoon();
+  }
+
+  // Lets another instance take over the relay without waiting for the lease to expire
+  void releaseLease(@Observes ShutdownEvent event) {
+    pgPool.preparedQuery(SqlQueries.releaseOutbox())
+      .execute(Tuple.of(owner))
+      .onFailure().invoke(err -> Log.warn("Could not release the outbox relay lease", err))
+      .onFailure().recoverWithNull()
+      .await().atMost(Duration.ofSeconds(5));
+  }
+
+  private void drain() {
+    pending.set(false);
+    relayBatch().subscribe().with(
+      relayed -> {
+        if (relayed == batchSize) {
+          drain();
+          return;
+        }
+        draining.set(false);
+        // A drain requested while this one was finishing
+        if (pending.get() && draining.compareAndSet(false, true)) {
+          drain();
+        }
+      },
+      err -> {
+        Log.error("Outbox relay failed", err);
+        draining.set(false);
+      });
+  }
+
+  Uni<Integer> relayBatch() {
+    // The lease keeps a single relay across instances, so that updates stay in order. No transaction is open while
+    // records are being sent, so a slow broker does not hold a connection nor locks.
+    return pgPool.preparedQuery(SqlQueries.claimOutbox())
+      .execute(Tuple.of(owner, lease.toMillis()))
+      .onItem().transformToUni(claim -> {
+        if (claim.size() == 0) {
+          return Uni.createFrom().item(0);
+        }
+        return pgPool.preparedQuery(SqlQueries.pendingOutbox())
+          .execute(Tuple.of(batchSize))
+          .onItem().transformToUni(this::relay);
+      });
+  }
+
+  private Uni<Integer> relay(RowSet<Row> rows) {
+    if (rows.size() == 0) {
+      return Uni.createFrom().item(0);
+    }
+    List<Long> ids = new ArrayList<>(rows.size());
+    List<Uni<Void>> sends = new ArrayList<>(rows.size());
+    for (Row row : rows) {
+      ids.add(row.getLong("id"));
+      sends.add(emitter.sendMessage(activityUpdate(row)));
+    }
+    // Rows are only deleted once Kafka has acknowledged every record, a failure sends the batch again
+    return Uni.join().all(sends).andFailFast()
+      .onItem().transformToUni(v -> pgPool.preparedQuery(SqlQueries.deleteOutbox())
+        .execute(Tuple.of(ids.toArray(new Long[0]))))
+      .onItem().invoke(rs -> Log.info("Relayed " + rs.rowCount() + " activity updates"))
+      .replaceWith(rows.size());
+  }
+
+  private static KafkaRecord<String, DailyUpdate> activityUpdate(Row row) {
+    String deviceId = row.getString("device_id");
+    LocalDateTime createdAt = row.getLocalDateTime("created_at");
+    String key = deviceId + ":" + createdAt.getYear() + "-" + createdAt.getMonth() + "-" + createdAt.getDayOfMonth();
+    return KafkaRecord.of(key, new DailyUpdate(deviceId, row.getString("timestamp"), row.getLong("steps_count")));
+  }
+}
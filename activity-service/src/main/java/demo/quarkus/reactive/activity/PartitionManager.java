@@ -0,0 +1,114 @@
+package demo.quarkus.reactive.activity;
+
+import io.quarkus.logging.Log;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static io.quarkus.scheduler.Scheduled.ConcurrentExecution.SKIP;
+
+// Maintains the monthly partitions of the stepevent table, and prunes the stepevent_sync ledger along with them
+@ApplicationScoped
+public class PartitionManager {
+
+  private static final Pattern PARTITION_NAME = Pattern.compile("stepevent_y(\\d{4})m(\\d{2})");
+
+  // Ledger rows deleted per statement, so that pruning neither holds locks nor writes WAL in one large transaction
+  private static final int LEDGER_PRUNE_BATCH = 10_000;
+
+  @Inject
+  PgPool pgPool;
+
+  // Number of months to create ahead of the current one
+  @ConfigProperty(name = "activity.partitions.premake", defaultValue = "3")
+  int premake;
+
+  // Number of months to keep, including the current one (keep everything when absent)
+  @ConfigProperty(name = "activity.partitions.retention")
+  Optional<Integer> retention;
+
+  // Drop expired partitions rather than just detaching them
+  @ConfigProperty(name = "activity.partitions.drop-expired", defaultValue = "false")
+  boolean dropExpired;
+
+  @Scheduled(every = "${activity.partitions.maintenance-every}", delayed = "${activity.partitions.maintenance-every}", concurrentExecution = SKIP)
+  Uni<Void> maintain() {
+    // The current month is the database's, whose clock and time zone stamp the events and bound the partitions
+    return pgPool.query(SqlQueries.currentDate()).execute()
+      .onItem().transform(rs -> YearMonth.from(rs.iterator().next().getLocalDate(0)))
+      .onItem().transformToUni(current -> createPartitions(current, current.plusMonths(premake))
+        .onItem().transformToUni(v -> expirePartitions(current)))
+      .onFailure().invoke(err -> Log.error("Partition maintenance failed", err));
+  }
+
+  Uni<Void> createPartitions(YearMonth first, YearMonth last) {
+    List<YearMonth> months = new ArrayList<>();
+    for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+      months.add(month);
+    }
+    return Multi.createFrom().iterable(months)
+      .onItem().transformToUniAndConcatenate(month -> pgPool
+        .query(SqlQueries.createPartition(partitionName(month), month.atDay(1), month.plusMonths(1).atDay(1)))
+        .execute())
+      .collect().last()
+      .replaceWithVoid();
+  }
+
+  private Uni<Void> expirePartitions(YearMonth current) {
+    if (retention.isEmpty()) {
+      return Uni.createFrom().voidItem();
+    }
+    YearMonth oldestKept = current.minusMonths(retention.get() - 1);
+    return pgPool.query(SqlQueries.listPartitions()).execute()
+      .onItem().transformToMulti(rs -> Multi.createFrom().iterable(rs))
+      .map(row -> row.getString("relname"))
+      .select().where(name -> isExpired(name, oldestKept))
+      .onItem().transformToUniAndConcatenate(this::expirePartition)
+      .collect().last()
+      // The ledger rows expire with the events they deduplicate, so that it does not grow without limit
+      .onItem().transformToUni(v -> pruneLedger(oldestKept.atDay(1)));
+  }
+
+  private Uni<Void> expirePartition(String name) {
+    Log.info((dropExpired ? "Dropping" : "Detaching") + " expired partition " + name);
+    Uni<Void> detach = pgPool.query(SqlQueries.detachPartition(name)).execute().replaceWithVoid();
+    if (dropExpired) {
+      return detach.onItem().transformToUni(v -> pgPool.query(SqlQueries.dropTable(name)).execute().replaceWithVoid());
+    }
+    return detach;
+  }
+
+  private Uni<Void> pruneLedger(LocalDate before) {
+    return pgPool.preparedQuery(SqlQueries.pruneStepEventSync()).execute(Tuple.of(before, LEDGER_PRUNE_BATCH))
+      .onItem().transformToUni(rs -> (rs.rowCount() < LEDGER_PRUNE_BATCH)
+        ? Uni.createFrom().voidItem()
+        : pruneLedger(before));
+  }
+
+  private static boolean isExpired(String partitionName, YearMonth oldestKept) {
+    Matcher matcher = PARTITION_NAME.matcher(partitionName);
+    if (!matcher.matches()) {
+      // Default partition, or a table that we do not manage
+      return false;
+    }
+    YearMonth month = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+    return month.isBefore(oldestKept);
+  }
+
+  private static String partitionName(YearMonth month) {
+    return "stepevent_y%04dm%02d".formatted(month.getYear(), month.getMonthValue());
+  }
+}
@@ -1,21 +1,32 @@
 package demo.quarkus.reactive.activity;
 
 import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.pgclient.PgPool;
-import io.vertx.mutiny.sqlclient.Row;
-import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.Tuple;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
+import org.jboss.resteasy.reactive.RestQuery;
+import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
+
+import java.util.List;
 
 @Path("/ranking")
 public class RankingResource {
 
+  // Sliding-window ranking fed by the events processor, and rebuilt from the database on startup
+  @Inject
+  Leaderboard leaderboard;
+
   // Inject PgPool managed by the reactive-pg-client extension
   // Configured in application properties (and other sources)
   @Inject
@@ -24,24 +35,60 @@ public class RankingResource {
   @Path("/last-24-hours")
   @GET
   @Produces(MediaType.APPLICATION_JSON)
-  public Uni<JsonArray> ranking() {
-    Log.info("Ranking query");
-
-    // No ceremony: execute the query on any free connection in the pool
-    // Prepared queries can be cached for performance
-    return pgPool.preparedQuery(SqlQueries.rankingLast24Hours())
-      .execute()
-      .onItem().transform(RankingResource::sendRanking);
+  public Uni<JsonArray> ranking(@RestQuery String after, @RestQuery @DefaultValue("0") int offset, @RestQuery Integer limit) {
+    Log.info("Ranking query after=" + after + " offset=" + offset + " limit=" + limit);
+
+    if (offset < 0 || (limit != null && limit < 0)) {
+      throw new BadRequestException("offset and limit must be positive");
+    }
+    // Only the requested entries are visited, no query is being made
+    int count = (limit != null) ? limit : Integer.MAX_VALUE;
+    return Uni.createFrom().item(sendRanking(leaderboard.top(parseAfter(after), offset, count)));
   }
 
-  // RowSet contains all the data returned by the DB
-  private static JsonArray sendRanking(RowSet<Row> rs) {
-    JsonArray data = new JsonArray();
-    // Iterate over the RowSet to build the response
-    for (Row row : rs) {
-      data.add(new JsonObject()
+  @Path("/last-24-hours/stream")
+  @GET
+  @Produces(RestMediaType.APPLICATION_NDJSON)
+  @RestStreamElementType(MediaType.APPLICATION_JSON)
+  public Multi<JsonObject> rankingStream(@RestQuery String after, @RestQuery Integer limit) {
+    Log.info("Ranking stream query after=" + after + " limit=" + limit);
+
+    if (limit != null && limit < 0) {
+      throw new BadRequestException("limit must be positive");
+    }
+    Leaderboard.Entry start = parseAfter(after);
+    Tuple params = (start != null) ?
+      Tuple.of(start.stepsCount(), start.deviceId(), limit) :
+      Tuple.of(null, null, limit);
+    // Rows are read from a cursor as the client consumes the response
+    return RowStreams.stream(pgPool, SqlQueries.rankingLast24Hours(), params)
+      .onItem().transform(row -> new JsonObject()
         .put("deviceId", row.getValue("device_id"))
         .put("stepsCount", row.getValue("steps")));
+  }
+
+  // Keyset pagination uses the last seen entry, formatted as "<stepsCount>,<deviceId>"
+  private static Leaderboard.Entry parseAfter(String after) {
+    if (after == null) {
+      return null;
+    }
+    int separator = after.indexOf(',');
+    try {
+      if (separator < 0) {
+        throw new IllegalArgumentException("Missing separator");
+      }
+      return new Leaderboard.Entry(after.substring(separator + 1), Long.parseLong(after.substring(0, separator)));
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("after must be formatted as <stepsCount>,<deviceId>", e);
+    }
+  }
+
+  private static JsonArray sendRanking(List<Leaderboard.Entry> entries) {
+    JsonArray data = new JsonArray();
+    for (Leaderboard.Entry entry : entries) {
+      data.add(new JsonObject()
+        .put("deviceId", entry.deviceId())
+        .put("stepsCount", entry.stepsCount()));
     }
     return data;
   }
@@ -0,0 +1,30 @@
+package demo.quarkus.reactive.activity;
+
+import io.smallrye.mutiny.Multi;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import io.vertx.mutiny.sqlclient.Tuple;
+
+class RowStreams {
+
+  // Rows fetched from the database per cursor read
+  private static final int FETCH_SIZE = 100;
+
+  // Stream the rows of a query through a cursor, so that only FETCH_SIZE rows are in memory at any time
+  // and rows are only fetched when the subscriber requests them
+  static Multi<Row> stream(PgPool pgPool, String query, Tuple params) {
+    return Multi.createFrom().resourceFromUni(
+        pgPool::getConnection,
+        conn -> conn.begin()
+          // Cursors only live inside a transaction, which is read-only here
+          .onItem().transformToMulti(tx -> conn.prepare(query)
+            .onItem().transformToMulti(statement -> statement.createStream(FETCH_SIZE, params).toMulti())
+            .onTermination().call(tx::rollback)))
+      .withFinalizer(SqlConnection::close);
+  }
+
+  private RowStreams() {
+    // Utility
+  }
+}
@@ -1,34 +1,323 @@
 package demo.quarkus.reactive.activity;
 
+import java.time.LocalDate;
+
 class SqlQueries {
 
   static String initDb() {
     // language=postgresql
     return """
+      DO $$
+      DECLARE
+          idx RECORD;
+      BEGIN
+          -- A stepevent table created before partitioning is set aside (with its indexes, whose names are reused), its
+          -- rows are moved to the partitioned table by DbSetup
+          IF EXISTS(SELECT 1 FROM pg_class WHERE relname = 'stepevent' AND relkind = 'r') THEN
+              FOR idx IN SELECT indexname FROM pg_indexes WHERE tablename = 'stepevent'
+                  LOOP
+                      EXECUTE format('ALTER INDEX %I RENAME TO %I', idx.indexname, idx.indexname || '_unpartitioned');
+                  END LOOP;
+              ALTER TABLE stepevent RENAME TO stepevent_unpartitioned;
+          END IF;
+      END
+      $$;
       CREATE TABLE IF NOT EXISTS stepevent
       (
           device_id      VARCHAR,
           device_sync    BIGINT,
           sync_timestamp timestamptz,
           steps_count    INTEGER,
+          PRIMARY KEY (device_id, device_sync, sync_timestamp)
+      ) PARTITION BY RANGE (sync_timestamp);
+      CREATE TABLE IF NOT EXISTS stepevent_default PARTITION OF stepevent DEFAULT;
+      CREATE TABLE IF NOT EXISTS stepevent_sync
+      (
+          device_id      VARCHAR,
+          device_sync    BIGINT,
+          sync_timestamp timestamptz NOT NULL,
           PRIMARY KEY (device_id, device_sync)
-      )""";
+      );
+      CREATE TABLE IF NOT EXISTS daily_steps
+      (
+          device_id VARCHAR,
+          day       DATE,
+          total     BIGINT NOT NULL,
+          PRIMARY KEY (device_id, day)
+      );
+      CREATE TABLE IF NOT EXISTS activity_outbox
+      (
+          id         BIGSERIAL PRIMARY KEY,
+          device_id  VARCHAR   NOT NULL,
+          payload    JSONB     NOT NULL,
+          created_at TIMESTAMP NOT NULL DEFAULT current_timestamp
+      );
+      CREATE TABLE IF NOT EXISTS activity_outbox_relay
+      (
+          id         INTEGER PRIMARY KEY,
+          owner      UUID        NOT NULL,
+          expires_at timestamptz NOT NULL
+      );
+      CREATE INDEX IF NOT EXISTS stepevent_device_id_sync_timestamp_idx ON stepevent (device_id, sync_timestamp);
+      CREATE INDEX IF NOT EXISTS stepevent_sync_timestamp_idx ON stepevent (sync_timestamp);
+      CREATE INDEX IF NOT EXISTS stepevent_sync_sync_timestamp_idx ON stepevent_sync (sync_timestamp)""";
   }
 
-  static String insertStepEvent() {
+  static String currentDate() {
     // language=postgresql
     return """
-      INSERT INTO stepevent
-      VALUES ($1, $2, current_timestamp, $3)""";
+      SELECT current_date""";
   }
 
-  static String stepsCountForToday() {
+  // Rows of the month that are in the default partition (which would prevent creating the partition) are moved to it
+  static String createPartition(String name, LocalDate from, LocalDate to) {
     // language=postgresql
     return """
-      SELECT current_timestamp, coalesce(sum(steps_count), 0)
+      DO $$
+      BEGIN
+          -- Serializes the partition maintenance and the imports
+          PERFORM pg_advisory_xact_lock(hashtext('stepevent_partitions'));
+          IF to_regclass('%1$s') IS NULL THEN
+              CREATE TABLE %1$s (LIKE stepevent INCLUDING DEFAULTS INCLUDING CONSTRAINTS);
+              WITH moved AS (DELETE FROM stepevent_default
+                  WHERE (sync_timestamp >= '%2$s') AND (sync_timestamp < '%3$s')
+                  RETURNING *)
+              INSERT INTO %1$s SELECT * FROM moved;
+              ALTER TABLE stepevent ATTACH PARTITION %1$s FOR VALUES FROM ('%2$s') TO ('%3$s');
+          END IF;
+      END
+      $$""".formatted(name, from, to);
+  }
+
+  static String listPartitions() {
+    // language=postgresql
+    return """
+      SELECT child.relname
+      FROM pg_inherits
+               JOIN pg_class parent ON pg_inherits.inhparent = parent.oid
+               JOIN pg_class child ON pg_inherits.inhrelid = child.oid
+      WHERE parent.relname = 'stepevent'""";
+  }
+
+  static String detachPartition(String name) {
+    // language=postgresql
+    return """
+      ALTER TABLE stepevent DETACH PARTITION %s""".formatted(name);
+  }
+
+  static String dropTable(String name) {
+    // language=postgresql
+    return """
+      DROP TABLE IF EXISTS %s""".formatted(name);
+  }
+
+  static String pruneStepEventSync() {
+    // language=postgresql
+    return """
+      DELETE FROM stepevent_sync
+      WHERE (device_id, device_sync) IN (SELECT device_id, device_sync
+                                         FROM stepevent_sync
+                                         WHERE (sync_timestamp < $1::date)
+                                         LIMIT $2)""";
+  }
+
+  static String hasUnpartitionedStepEvents() {
+    // language=postgresql
+    return """
+      SELECT to_regclass('stepevent_unpartitioned') IS NOT NULL""";
+  }
+
+  static String unpartitionedStepEventDays() {
+    // language=postgresql
+    return """
+      SELECT min(sync_timestamp)::date AS first, max(sync_timestamp)::date AS last
+      FROM stepevent_unpartitioned""";
+  }
+
+  // Moves the next batch of legacy step events, in primary key order from the given key (when there is one), and
+  // seeds the ledger with them. Returns the last key of the batch with the batch size, or nothing once done.
+  static String migrateUnpartitionedStepEvents(boolean afterKey) {
+    String after = afterKey ? "WHERE ((device_id, device_sync) > ($2::varchar, $3::bigint))" : "";
+    // language=postgresql
+    return """
+      WITH moved AS (SELECT device_id, device_sync, sync_timestamp, steps_count
+                     FROM stepevent_unpartitioned
+                     %s
+                     ORDER BY device_id, device_sync
+                     LIMIT $1),
+           fresh AS (INSERT INTO stepevent_sync
+               SELECT device_id, device_sync, sync_timestamp
+               FROM moved
+               ON CONFLICT DO NOTHING
+               RETURNING device_id, device_sync),
+           events AS (INSERT INTO stepevent
+               SELECT device_id, device_sync, sync_timestamp, steps_count
+               FROM moved
+                        JOIN fresh USING (device_id, device_sync))
+      SELECT device_id, device_sync, count(*) OVER () AS rows
+      FROM moved
+      ORDER BY device_id DESC, device_sync DESC
+      LIMIT 1""".formatted(after);
+  }
+
+  static String rebuildDailySteps() {
+    // language=postgresql
+    return """
+      INSERT INTO daily_steps (device_id, day, total)
+      SELECT device_id, sync_timestamp::date, sum(steps_count)
       FROM stepevent
-      WHERE (device_id = $1)
-        AND (date_trunc('day', sync_timestamp) = date_trunc('day', current_timestamp))""";
+      GROUP BY device_id, sync_timestamp::date
+      ON CONFLICT (device_id, day) DO UPDATE SET total = excluded.total""";
+  }
+
+  static String dailyStepsIsEmpty() {
+    // language=postgresql
+    return """
+      SELECT NOT EXISTS(SELECT 1 FROM daily_steps)""";
+  }
+
+  static String insertStepEvents() {
+    // language=postgresql
+    return """
+      WITH batch AS (SELECT DISTINCT ON (device_id, device_sync) device_id, device_sync, steps_count
+                     FROM unnest($1::varchar[], $2::bigint[], $3::integer[]) AS batch(device_id, device_sync, steps_count)),
+           fresh AS (INSERT INTO stepevent_sync
+               SELECT device_id, device_sync, current_timestamp
+               FROM batch
+               ON CONFLICT DO NOTHING
+               RETURNING device_id, device_sync)
+      INSERT INTO stepevent
+      SELECT device_id, device_sync, current_timestamp, steps_count
+      FROM batch
+               JOIN fresh USING (device_id, device_sync)
+      RETURNING device_id, steps_count""";
+  }
+
+  static String createImportTable() {
+    // language=postgresql
+    return """
+      CREATE TEMPORARY TABLE stepevent_import
+      (
+          device_id      VARCHAR,
+          device_sync    BIGINT,
+          sync_timestamp timestamptz,
+          steps_count    INTEGER
+      ) ON COMMIT DROP""";
+  }
+
+  static String copyImportedStepEvents() {
+    // language=postgresql
+    return """
+      COPY stepevent_import (device_id, device_sync, sync_timestamp, steps_count) FROM STDIN (FORMAT binary)""";
+  }
+
+  static String importedStepEventDays() {
+    // language=postgresql
+    return """
+      SELECT (min(sync_timestamp) - (interval '1 day'))::date AS first,
+             (max(sync_timestamp) + (interval '1 day'))::date AS last
+      FROM stepevent_import""";
+  }
+
+  static String createMergedTable() {
+    // language=postgresql
+    return """
+      CREATE TEMPORARY TABLE stepevent_merged
+      (
+          device_id      VARCHAR,
+          sync_timestamp timestamptz,
+          steps_count    INTEGER
+      ) ON COMMIT DROP""";
+  }
+
+  static String mergeImportedStepEvents() {
+    // language=postgresql
+    return """
+      WITH batch AS (SELECT DISTINCT ON (device_id, device_sync) device_id, device_sync, sync_timestamp, steps_count
+                     FROM stepevent_import),
+           fresh AS (INSERT INTO stepevent_sync
+               SELECT device_id, device_sync, sync_timestamp
+               FROM batch
+               ON CONFLICT DO NOTHING
+               RETURNING device_id, device_sync),
+           merged AS (INSERT INTO stepevent
+               SELECT device_id, device_sync, sync_timestamp, steps_count
+               FROM batch
+                        JOIN fresh USING (device_id, device_sync)
+               RETURNING device_id, sync_timestamp, steps_count)
+      INSERT INTO stepevent_merged
+      SELECT device_id, sync_timestamp, steps_count
+      FROM merged""";
+  }
+
+  static String addMergedDailySteps() {
+    // language=postgresql
+    return """
+      INSERT INTO daily_steps (device_id, day, total)
+      SELECT device_id, sync_timestamp::date, sum(steps_count)
+      FROM stepevent_merged
+      GROUP BY device_id, sync_timestamp::date
+      ON CONFLICT (device_id, day) DO UPDATE SET total = daily_steps.total + excluded.total""";
+  }
+
+  static String mergedStepsPerMinuteLast24Hours() {
+    // language=postgresql
+    return """
+      SELECT device_id,
+             (extract(EPOCH FROM date_trunc('minute', sync_timestamp)) / 60)::bigint AS minute,
+             sum(steps_count)::integer AS steps
+      FROM stepevent_merged
+      WHERE (sync_timestamp >= now() - (interval '24 hours'))
+      GROUP BY device_id, minute""";
+  }
+
+  static String upsertDailySteps() {
+    // language=postgresql
+    return """
+      WITH totals AS (INSERT INTO daily_steps (device_id, day, total)
+          SELECT device_id, current_date, steps
+          FROM unnest($1::varchar[], $2::bigint[]) AS batch(device_id, steps)
+          ON CONFLICT (device_id, day) DO UPDATE SET total = daily_steps.total + excluded.total
+          RETURNING device_id, total)
+      INSERT INTO activity_outbox (device_id, payload)
+      SELECT device_id, jsonb_build_object('deviceId', device_id, 'timestamp', current_timestamp, 'stepsCount', total)
+      FROM totals
+      RETURNING current_date AS day""";
+  }
+
+  static String claimOutbox() {
+    // language=postgresql
+    return """
+      INSERT INTO activity_outbox_relay (id, owner, expires_at)
+      VALUES (1, $1::uuid, now() + ($2::bigint * interval '1 millisecond'))
+      ON CONFLICT (id) DO UPDATE SET owner      = excluded.owner,
+                                     expires_at = excluded.expires_at
+      WHERE (activity_outbox_relay.owner = excluded.owner)
+         OR (activity_outbox_relay.expires_at < now())
+      RETURNING owner""";
+  }
+
+  static String releaseOutbox() {
+    // language=postgresql
+    return """
+      DELETE FROM activity_outbox_relay
+      WHERE (owner = $1::uuid)""";
+  }
+
+  static String pendingOutbox() {
+    // language=postgresql
+    return """
+      SELECT id, device_id, payload ->> 'timestamp' AS timestamp, (payload ->> 'stepsCount')::bigint AS steps_count, created_at
+      FROM activity_outbox
+      ORDER BY id
+      LIMIT $1""";
+  }
+
+  static String deleteOutbox() {
+    // language=postgresql
+    return """
+      DELETE FROM activity_outbox
+      WHERE (id = ANY ($1::bigint[]))""";
   }
 
   static String totalStepsCount() {
@@ -45,26 +334,88 @@ class SqlQueries {
       SELECT sum(steps_count)
       FROM stepevent
       WHERE (device_id = $1)
-        AND (date_trunc('month', sync_timestamp) = $2::timestamp)""";
+        AND (sync_timestamp >= $2::timestamp)
+        AND (sync_timestamp < $3::timestamp)""";
   }
 
   static String dailyStepsCount() {
     // language=postgresql
     return """
-      SELECT sum(steps_count)
-      FROM stepevent
+      SELECT total
+      FROM daily_steps
       WHERE (device_id = $1)
-        AND (date_trunc('day', sync_timestamp) = $2::timestamp)""";
+        AND (day = $2)""";
+  }
+
+  static String stepsCountSeries() {
+    // language=postgresql
+    return """
+      WITH steps AS (SELECT date_trunc($2, sync_timestamp::timestamp) AS bucket, sum(steps_count) AS steps
+                     FROM stepevent
+                     WHERE (device_id = $1)
+                       AND (sync_timestamp >= $3::timestamp)
+                       AND (sync_timestamp < $4::timestamp)
+                     GROUP BY bucket)
+      SELECT series.bucket, coalesce(steps.steps, 0)
+      FROM generate_series(date_trunc($2, $3::timestamp), $4::timestamp - (interval '1 microsecond'),
+                           ('1 ' || $2)::interval) AS series(bucket)
+               LEFT JOIN steps USING (bucket)
+      ORDER BY series.bucket""";
+  }
+
+  static String bulkTotalStepsCount() {
+    // language=postgresql
+    return """
+      SELECT device_id, sum(steps_count)
+      FROM stepevent
+      WHERE (device_id = ANY ($1::varchar[]))
+      GROUP BY device_id""";
+  }
+
+  static String bulkMonthlyStepsCount() {
+    // language=postgresql
+    return """
+      SELECT device_id, sum(steps_count)
+      FROM stepevent
+      WHERE (device_id = ANY ($1::varchar[]))
+        AND (sync_timestamp >= $2::timestamp)
+        AND (sync_timestamp < $3::timestamp)
+      GROUP BY device_id""";
+  }
+
+  static String bulkDailyStepsCount() {
+    // language=postgresql
+    return """
+      SELECT device_id, total
+      FROM daily_steps
+      WHERE (device_id = ANY ($1::varchar[]))
+        AND (day = $2)""";
   }
 
   static String rankingLast24Hours() {
     // language=postgresql
     return """
-      SELECT device_id, SUM(steps_count) as steps
+      SELECT device_id, steps
+      FROM (SELECT device_id, SUM(steps_count) as steps
+            FROM stepevent
+            WHERE (sync_timestamp >= now() - (interval '24 hours'))
+            GROUP BY device_id) AS ranking
+      WHERE ($1::bigint IS NULL)
+         OR (steps < $1::bigint)
+         OR (steps = $1::bigint AND device_id > $2::varchar)
+      ORDER BY steps DESC, device_id
+      LIMIT $3::bigint""";
+  }
+
+  static String stepsPerMinuteLast24Hours() {
+    // language=postgresql
+    return """
+      SELECT device_id,
+             (extract(EPOCH FROM date_trunc('minute', sync_timestamp)) / 60)::bigint AS minute,
+             sum(steps_count)::integer AS steps
       FROM stepevent
-      WHERE (now() - sync_timestamp <= (interval '24 hours'))
-      GROUP BY device_id
-      ORDER BY steps DESC""";
+      WHERE (sync_timestamp >= now() - (interval '24 hours'))
+      GROUP BY device_id, minute""";
   }
 
   private SqlQueries() {
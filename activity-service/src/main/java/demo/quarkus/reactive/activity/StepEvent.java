@@ -0,0 +1,5 @@
+package demo.quarkus.reactive.activity;
+
+// Steps sync sent by a device through the ingestion service
+public record StepEvent(String deviceId, long deviceSync, int stepsCount) {
+}
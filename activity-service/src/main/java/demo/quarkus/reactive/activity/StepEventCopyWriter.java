@@ -0,0 +1,46 @@
+package demo.quarkus.reactive.activity;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+// Encodes step events in the binary format of COPY (https://www.postgresql.org/docs/current/sql-copy.html)
+class StepEventCopyWriter {
+
+  private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+  // Timestamps are sent as microseconds since 2000-01-01 UTC
+  private static final Instant POSTGRES_EPOCH = Instant.parse("2000-01-01T00:00:00Z");
+
+  private final DataOutputStream out;
+
+  StepEventCopyWriter(OutputStream out) throws IOException {
+    this.out = new DataOutputStream(out);
+    this.out.write(SIGNATURE);
+    // Flags, then header extension length
+    this.out.writeInt(0);
+    this.out.writeInt(0);
+  }
+
+  // Fields follow the device_id, device_sync, sync_timestamp and steps_count columns
+  void write(String deviceId, long deviceSync, Instant syncTimestamp, int stepsCount) throws IOException {
+    byte[] deviceIdBytes = deviceId.getBytes(StandardCharsets.UTF_8);
+    out.writeShort(4);
+    out.writeInt(deviceIdBytes.length);
+    out.write(deviceIdBytes);
+    out.writeInt(8);
+    out.writeLong(deviceSync);
+    out.writeInt(8);
+    out.writeLong(ChronoUnit.MICROS.between(POSTGRES_EPOCH, syncTimestamp));
+    out.writeInt(4);
+    out.writeInt(stepsCount);
+  }
+
+  void finish() throws IOException {
+    out.writeShort(-1);
+    out.flush();
+  }
+}
@@ -0,0 +1,47 @@
+package demo.quarkus.reactive.activity;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+
+// Reads the JSON step events with the streaming parser, without an intermediate tree or data binding
+public class StepEventDeserializer implements Deserializer<StepEvent> {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  @Override
+  public StepEvent deserialize(String topic, byte[] data) {
+    if (data == null) {
+      return null;
+    }
+    try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new SerializationException("Expected a JSON object");
+      }
+      String deviceId = null;
+      Long deviceSync = null;
+      Integer stepsCount = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        switch (field) {
+          case "deviceId" -> deviceId = (value == JsonToken.VALUE_STRING) ? parser.getText() : null;
+          case "deviceSync" -> deviceSync = (value == JsonToken.VALUE_NUMBER_INT) ? parser.getLongValue() : null;
+          case "stepsCount" -> stepsCount = (value == JsonToken.VALUE_NUMBER_INT) ? parser.getIntValue() : null;
+          default -> parser.skipChildren();
+        }
+      }
+      // Missing or mistyped fields are rejected rather than defaulted, they would be stored as real syncs
+      if (deviceId == null || deviceSync == null || stepsCount == null) {
+        throw new SerializationException("Step event without a deviceId, deviceSync or stepsCount");
+      }
+      return new StepEvent(deviceId, deviceSync, stepsCount);
+    } catch (IOException e) {
+      throw new SerializationException("Invalid step event", e);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package demo.quarkus.reactive.activity;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.json.JsonObject;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Bulk imports step events with COPY, which the reactive client does not support, hence a pooled JDBC connection
+@ApplicationScoped
+public class StepEventImporter {
+
+  public enum Format {
+    NDJSON, CSV
+  }
+
+  public record Report(long read, long written, long elapsedMillis) {
+  }
+
+  private record MinuteSteps(String deviceId, long minute, int steps) {
+  }
+
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+  private static final long PROGRESS_EVERY = 100_000L;
+
+  // Pooled JDBC connections, only used here
+  @Inject
+  DataSource dataSource;
+
+  @Inject
+  PartitionManager partitionManager;
+
+  @Inject
+  Leaderboard leaderboard;
+
+  @Inject
+  StepsCountCache cache;
+
+  // Blocking: events are copied to a staging table as they are read, so memory use does not depend on the input size,
+  // then merged through the stepevent_sync ledger so that known events are skipped
+  public Report importEvents(InputStream input, Format format) throws SQLException, IOException {
+    long start = System.nanoTime();
+    long read;
+    long written;
+    List<MinuteSteps> recentSteps = new ArrayList<>();
+    try (Connection conn = dataSource.getConnection()) {
+      conn.setAutoCommit(false);
+      try (Statement statement = conn.createStatement()) {
+        statement.execute(SqlQueries.createImportTable());
+        statement.execute(SqlQueries.createMergedTable());
+        read = copy(conn, input, format);
+        createPartitions(statement);
+        written = statement.executeUpdate(SqlQueries.mergeImportedStepEvents());
+        // Only the merged events are added, so concurrent updates of the same totals are kept
+        statement.execute(SqlQueries.addMergedDailySteps());
+        try (ResultSet rows = statement.executeQuery(SqlQueries.mergedStepsPerMinuteLast24Hours())) {
+          while (rows.next()) {
+            recentSteps.add(new MinuteSteps(rows.getString("device_id"), rows.getLong("minute"), rows.getInt("steps")));
+          }
+        }
+        conn.commit();
+      } catch (SQLException | IOException | RuntimeException e) {
+        conn.rollback();
+        throw e;
+      }
+    }
+    // Derived state is updated once the events are visible, the leaderboard incrementally so that live events are kept
+    for (MinuteSteps steps : recentSteps) {
+      leaderboard.record(steps.deviceId(), steps.minute(), steps.steps());
+    }
+    cache.invalidateAll().await().indefinitely();
+
+    Report report = new Report(read, written, (System.nanoTime() - start) / 1_000_000L);
+    Log.info("Imported step events: read=" + report.read() + " written=" + report.written() + " in " + report.elapsedMillis() + "ms");
+    return report;
+  }
+
+  // Imported events keep their timestamps, so the partitions of their months are created before they are merged
+  // rather than letting them land in the default partition. The range is widened by a day, as the time zone of this
+  // connection may differ from the one of the partition bounds.
+  private void createPartitions(Statement statement) throws SQLException {
+    try (ResultSet days = statement.executeQuery(SqlQueries.importedStepEventDays())) {
+      days.next();
+      LocalDate first = days.getObject("first", LocalDate.class);
+      if (first != null) {
+        partitionManager.createPartitions(YearMonth.from(first), YearMonth.from(days.getObject("last", LocalDate.class)))
+          .await().indefinitely();
+      }
+    }
+  }
+
+  private static long copy(Connection conn, InputStream input, Format format) throws SQLException, IOException {
+    PGCopyOutputStream copyOut = new PGCopyOutputStream(
+      conn.unwrap(PGConnection.class).getCopyAPI().copyIn(SqlQueries.copyImportedStepEvents()), COPY_BUFFER_SIZE);
+    try {
+      StepEventCopyWriter writer = new StepEventCopyWriter(copyOut);
+      BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+      long lineNumber = 0L;
+      long count = 0L;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isBlank() || (format == Format.CSV && lineNumber == 1L && line.startsWith("deviceId"))) {
+          continue;
+        }
+        try {
+          write(writer, line, format);
+        } catch (RuntimeException e) {
+          throw new IllegalArgumentException("Invalid step event on line " + lineNumber, e);
+        }
+        count++;
+        if (count % PROGRESS_EVERY == 0L) {
+          Log.info("Copied " + count + " step events");
+        }
+      }
+      writer.finish();
+      copyOut.endCopy();
+      return count;
+    } finally {
+      if (copyOut.isActive()) {
+        copyOut.cancelCopy();
+      }
+    }
+  }
+
+  private static void write(StepEventCopyWriter writer, String line, Format format) throws IOException {
+    if (format == Format.NDJSON) {
+      JsonObject data = new JsonObject(line);
+      writer.write(
+        Objects.requireNonNull(data.getString("deviceId"), "deviceId"),
+        Objects.requireNonNull(data.getLong("deviceSync"), "deviceSync"),
+        parseTimestamp(Objects.requireNonNull(data.getString("syncTimestamp"), "syncTimestamp")),
+        Objects.requireNonNull(data.getInteger("stepsCount"), "stepsCount"));
+    } else {
+      // deviceId,deviceSync,syncTimestamp,stepsCount
+      String[] fields = line.split(",", -1);
+      if (fields.length != 4) {
+        throw new IllegalArgumentException("Expected 4 fields, got " + fields.length);
+      }
+      writer.write(
+        fields[0].trim(),
+        Long.parseLong(fields[1].trim()),
+        parseTimestamp(fields[2].trim()),
+        Integer.parseInt(fields[3].trim()));
+    }
+  }
+
+  // Timestamps without an offset are taken as UTC
+  private static Instant parseTimestamp(String text) {
+    try {
+      return OffsetDateTime.parse(text).toInstant();
+    } catch (DateTimeException e) {
+      return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package demo.quarkus.reactive.activity;
+
+import io.quarkus.cache.Cache;
+import io.quarkus.cache.CacheName;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+// Steps counts served by DeviceResource, bounded in size (see the device-steps cache configuration)
+@ApplicationScoped
+public class StepsCountCache {
+
+  public enum Granularity {
+    TOTAL, MONTH, DAY
+  }
+
+  public record Key(String deviceId, Granularity granularity, String period) {
+
+    static Key total(String deviceId) {
+      return new Key(deviceId, Granularity.TOTAL, "");
+    }
+
+    static Key month(String deviceId, YearMonth month) {
+      return new Key(deviceId, Granularity.MONTH, month.toString());
+    }
+
+    static Key day(String deviceId, LocalDate day) {
+      return new Key(deviceId, Granularity.DAY, day.toString());
+    }
+  }
+
+  @Inject
+  @CacheName("device-steps")
+  Cache cache;
+
+  // Empty counts are cached as well, since they are the 404 responses
+  public Uni<Optional<Integer>> get(Key key, Supplier<Uni<Optional<Integer>>> loader) {
+    return cache.getAsync(key, k -> loader.get());
+  }
+
+  // Past periods never change, only the total and the current month and day of a device have to be invalidated
+  // when new events are written (a load racing with a write can still cache a stale count until the next write).
+  // The current day is the one of the database, which may differ from the JVM one (time zone, or around midnight).
+  public Uni<Void> invalidateCurrentPeriods(Collection<String> deviceIds, LocalDate today) {
+    YearMonth month = YearMonth.from(today);
+    return Multi.createFrom().iterable(deviceIds)
+      .onItem().transformToUniAndMerge(deviceId -> Uni.join().all(
+          cache.invalidate(Key.total(deviceId)),
+          cache.invalidate(Key.month(deviceId, month)),
+          cache.invalidate(Key.day(deviceId, today)))
+        .andFailFast())
+      .collect().last()
+      .replaceWithVoid();
+  }
+
+  // After bulk changes, when the written devices and periods are not tracked
+  public Uni<Void> invalidateAll() {
+    return cache.invalidateAll();
+  }
+}
@@ -5,11 +5,16 @@ import io.quarkus.test.common.http.TestHTTPEndpoint;
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.http.ContentType;
 import io.restassured.path.json.JsonPath;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.pgclient.PgPool;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.util.Map;
+import java.util.stream.Collectors;
+
 import static io.restassured.RestAssured.given;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -127,4 +132,139 @@ class DeviceResourceTest {
       .assertThat()
       .statusCode(400);
   }
+
+  @Test
+  @DisplayName("Operate bulk steps count queries over the dataset")
+  void bulkStepsCountQueries() {
+    Map<String, Long> counts = bulk(new JsonObject()
+      .put("deviceIds", new JsonArray().add("123").add("456").add("122"))
+      .put("period", "total"));
+    assertThat(counts).containsExactlyInAnyOrderEntriesOf(Map.of("123", 7161L, "456", 123L));
+
+    counts = bulk(new JsonObject()
+      .put("deviceIds", new JsonArray().add("123").add("456"))
+      .put("period", "month")
+      .put("year", 2023)
+      .put("month", 5));
+    assertThat(counts).containsExactlyInAnyOrderEntriesOf(Map.of("123", 620L, "456", 123L));
+
+    counts = bulk(new JsonObject()
+      .put("deviceIds", new JsonArray().add("123").add("456"))
+      .put("period", "day")
+      .put("year", 2023)
+      .put("month", 5)
+      .put("day", 20));
+    assertThat(counts).containsExactlyInAnyOrderEntriesOf(Map.of("123", 200L));
+  }
+
+  @Test
+  @DisplayName("Check for bad bulk requests (HTTP 400)")
+  void checkBulk400() {
+    given()
+      .contentType(ContentType.JSON)
+      .body(new JsonObject().put("deviceIds", new JsonArray()).put("period", "total").encode())
+      .post("/bulk")
+      .then()
+      .assertThat()
+      .statusCode(400);
+
+    given()
+      .contentType(ContentType.JSON)
+      .body(new JsonObject().put("deviceIds", new JsonArray().add("123")).put("period", "week").encode())
+      .post("/bulk")
+      .then()
+      .assertThat()
+      .statusCode(400);
+
+    given()
+      .contentType(ContentType.JSON)
+      .body(new JsonObject().put("deviceIds", new JsonArray().add("123")).put("period", "day").put("year", 2023).encode())
+      .post("/bulk")
+      .then()
+      .assertThat()
+      .statusCode(400);
+  }
+
+  @Test
+  @DisplayName("Fetch a daily steps count series over the dataset")
+  void stepsCountSeries() {
+    JsonPath jsonPath = given()
+      .accept(ContentType.JSON)
+      .queryParam("from", "2023-05-19")
+      .queryParam("to", "2023-05-22")
+      .queryParam("bucket", "day")
+      .get("/123/series")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .jsonPath();
+
+    assertThat(jsonPath.getList("start", String.class)).containsExactly(
+      "2023-05-19T00:00", "2023-05-20T00:00", "2023-05-21T00:00");
+    assertThat(jsonPath.getList("count", Integer.class)).containsExactly(0, 200, 420);
+
+    jsonPath = given()
+      .accept(ContentType.JSON)
+      .queryParam("from", "2023-04-01")
+      .queryParam("to", "2023-06-01")
+      .queryParam("bucket", "month")
+      .get("/123/series")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .jsonPath();
+
+    assertThat(jsonPath.getList("count", Integer.class)).containsExactly(6541, 620);
+  }
+
+  @Test
+  @DisplayName("Check for bad series requests (HTTP 400)")
+  void checkSeries400() {
+    given()
+      .accept(ContentType.JSON)
+      .queryParam("from", "2023-05-19")
+      .queryParam("to", "2023-05-22")
+      .queryParam("bucket", "year")
+      .get("/123/series")
+      .then()
+      .assertThat()
+      .statusCode(400);
+
+    given()
+      .accept(ContentType.JSON)
+      .queryParam("from", "2023-05-22")
+      .queryParam("to", "2023-05-19")
+      .get("/123/series")
+      .then()
+      .assertThat()
+      .statusCode(400);
+
+    given()
+      .accept(ContentType.JSON)
+      .queryParam("from", "2023-05-32")
+      .queryParam("to", "2023-06-19")
+      .get("/123/series")
+      .then()
+      .assertThat()
+      .statusCode(400);
+  }
+
+  private Map<String, Long> bulk(JsonObject request) {
+    String body = given()
+      .contentType(ContentType.JSON)
+      .accept("application/x-ndjson")
+      .body(request.encode())
+      .post("/bulk")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .asString();
+    return body.lines()
+      .filter(line -> !line.isBlank())
+      .map(JsonObject::new)
+      .collect(Collectors.toMap(json -> json.getString("deviceId"), json -> json.getLong("count")));
+  }
 }
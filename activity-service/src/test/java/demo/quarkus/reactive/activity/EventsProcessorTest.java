@@ -1,23 +1,37 @@
 package demo.quarkus.reactive.activity;
 
 import io.quarkus.kafka.client.serialization.JsonObjectSerde;
+import io.quarkus.logging.Log;
 import io.quarkus.test.common.QuarkusTestResource;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.kafka.InjectKafkaCompanion;
 import io.quarkus.test.kafka.KafkaCompanionResource;
+import io.restassured.http.ContentType;
+import io.smallrye.reactive.messaging.kafka.companion.ConsumerTask;
 import io.smallrye.reactive.messaging.kafka.companion.KafkaCompanion;
 import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import org.apache.kafka.clients.admin.OffsetSpec;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import static io.restassured.RestAssured.given;
+import static org.awaitility.Awaitility.await;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 
 @QuarkusTest
 @QuarkusTestResource(KafkaCompanionResource.class)
@@ -55,14 +69,11 @@ class EventsProcessorTest {
         .put("stepsCount", 200))
     ));
 
-    List<ConsumerRecord<String, JsonObject>> records = companion.consume(JsonObject.class)
-      .fromTopics("daily.step.updates", 1)
-      .awaitCompletion()
-      .getRecords();
-    JsonObject last = records.getFirst().value();
+    List<ConsumerRecord<String, JsonObject>> records = awaitUpdates(Map.of("123", 400L));
+    JsonObject last = records.getLast().value();
     assertThat(last.getString("deviceId")).isEqualTo("123");
     assertThat(last.containsKey("timestamp")).isTrue();
-    assertThat(last.getInteger("stepsCount")).isEqualTo(200);
+    assertThat(last.getInteger("stepsCount")).isEqualTo(400);
   }
 
   @Test
@@ -79,13 +90,216 @@ class EventsProcessorTest {
         .put("stepsCount", 200))
     ));
 
-    List<ConsumerRecord<String, JsonObject>> records = companion.consume(JsonObject.class)
-      .fromTopics("daily.step.updates", 2)
-      .awaitCompletion()
-      .getRecords();
-    JsonObject last = records.get(1).value();
+    List<ConsumerRecord<String, JsonObject>> records = awaitUpdates(Map.of("123", 200L));
+    JsonObject last = records.getLast().value();
     assertThat(last.getString("deviceId")).isEqualTo("123");
     assertThat(last.containsKey("timestamp")).isTrue();
     assertThat(last.getInteger("stepsCount")).isEqualTo(200);
   }
+
+  @Test
+  @DisplayName("Send an incomplete event among valid ones, and observe that it is skipped")
+  void observeIncompleteEventSkipped() {
+    companion.produce(JsonObject.class).fromRecords(List.of(
+      new ProducerRecord<>("incoming.steps", new JsonObject()
+        .put("deviceId", "123")
+        .put("deviceSync", 1L)
+        .put("stepsCount", 200)),
+      new ProducerRecord<>("incoming.steps", new JsonObject()
+        .put("deviceId", "123")
+        .put("stepsCount", 5000)),
+      new ProducerRecord<>("incoming.steps", new JsonObject()
+        .put("deviceId", "123")
+        .put("deviceSync", 2L)
+        .put("stepsCount", 100))
+    ));
+
+    awaitUpdates(Map.of("123", 300L));
+    Row row = pgPool.query("SELECT count(*) FROM stepevent WHERE device_id = '123' AND device_sync = 0")
+      .execute()
+      .await().indefinitely()
+      .iterator().next();
+    assertThat(row.getLong(0)).isZero();
+  }
+
+  @Test
+  @DisplayName("Leave an activity update in the outbox, and observe that it is relayed")
+  void observeOutboxRelay() {
+    pgPool.query("""
+        INSERT INTO activity_outbox (device_id, payload)
+        VALUES ('654', '{"deviceId": "654", "timestamp": "2024-04-01T10:00:00", "stepsCount": 1200}')""")
+      .execute()
+      .await().indefinitely();
+
+    List<ConsumerRecord<String, JsonObject>> records = companion.consume(JsonObject.class)
+      .fromTopics("daily.step.updates", 1)
+      .awaitCompletion()
+      .getRecords();
+    assertThat(records.getFirst().key()).startsWith("654:");
+    assertThat(records.getFirst().value().getInteger("stepsCount")).isEqualTo(1200);
+
+    await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> assertThat(pgPool.query("SELECT count(*) FROM activity_outbox")
+      .execute()
+      .await().indefinitely()
+      .iterator().next()
+      .getLong(0)).isZero());
+  }
+
+  @Test
+  @DisplayName("Send a burst of events with duplicates, and observe that each row is written once")
+  void observeBatchedInsertsWithDuplicates() {
+    List<ProducerRecord<String, JsonObject>> burst = new ArrayList<>();
+    for (long sync = 1; sync <= 20; sync++) {
+      JsonObject data = new JsonObject()
+        .put("deviceId", "789")
+        .put("deviceSync", sync)
+        .put("stepsCount", 10);
+      burst.add(new ProducerRecord<>("incoming.steps", data));
+      if (sync % 5 == 0) {
+        burst.add(new ProducerRecord<>("incoming.steps", data.copy()));
+      }
+    }
+    companion.produce(JsonObject.class).fromRecords(burst);
+
+    // Updates are aggregated per device and per batch
+    List<ConsumerRecord<String, JsonObject>> records = awaitUpdates(Map.of("789", 200L));
+    assertThat(records).hasSizeLessThanOrEqualTo(burst.size());
+
+    Row row = pgPool.query("SELECT count(*), sum(steps_count) FROM stepevent WHERE device_id = '789'")
+      .execute()
+      .await().indefinitely()
+      .iterator().next();
+    assertThat(row.getLong(0)).isEqualTo(20L);
+    assertThat(row.getLong(1)).isEqualTo(200L);
+  }
+
+  @Test
+  @DisplayName("Send a load of events from many devices, and observe that the updates are ordered per device")
+  void observeOrderedUpdatesPerDevice() {
+    // Run with -Dactivity.steps.lanes=1 to compare with sequential processing
+    int devices = 40;
+    int eventsPerDevice = 50;
+    List<ProducerRecord<String, JsonObject>> load = new ArrayList<>();
+    for (long sync = 1; sync <= eventsPerDevice; sync++) {
+      for (int d = 0; d < devices; d++) {
+        String deviceId = "load-" + d;
+        load.add(new ProducerRecord<>("incoming.steps", deviceId, new JsonObject()
+          .put("deviceId", deviceId)
+          .put("deviceSync", sync)
+          .put("stepsCount", 10)));
+      }
+    }
+
+    long start = System.nanoTime();
+    companion.produce(JsonObject.class).fromRecords(load);
+    Map<String, Long> expected = new HashMap<>();
+    for (int d = 0; d < devices; d++) {
+      expected.put("load-" + d, eventsPerDevice * 10L);
+    }
+    List<ConsumerRecord<String, JsonObject>> records = awaitUpdates(expected);
+    long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+    Log.info("Processed " + load.size() + " events into " + records.size() + " updates in " + elapsedMillis + "ms (" + (load.size() * 1000L / Math.max(1L, elapsedMillis)) + " events/s)");
+
+    Map<String, Long> lastCounts = new HashMap<>();
+    for (ConsumerRecord<String, JsonObject> record : records) {
+      String deviceId = record.value().getString("deviceId");
+      long stepsCount = record.value().getLong("stepsCount");
+      assertThat(stepsCount).isGreaterThanOrEqualTo(lastCounts.getOrDefault(deviceId, 0L));
+      lastCounts.put(deviceId, stepsCount);
+    }
+    assertThat(lastCounts).hasSize(devices);
+    assertThat(lastCounts.values()).containsOnly(eventsPerDevice * 10L);
+  }
+
+  @Test
+  @DisplayName("Send events from the same device, and observe that cached steps counts are refreshed")
+  void observeCachedStepsCountRefresh() {
+    companion.produce(JsonObject.class).fromRecords(List.of(
+      new ProducerRecord<>("incoming.steps", new JsonObject()
+        .put("deviceId", "321")
+        .put("deviceSync", 1L)
+        .put("stepsCount", 200))));
+    companion.consume(JsonObject.class)
+      .fromTopics("daily.step.updates", 1)
+      .awaitCompletion();
+
+    given()
+      .accept(ContentType.JSON)
+      .get("/device/321/total")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .body("count", equalTo(200));
+
+    companion.produce(JsonObject.class).fromRecords(List.of(
+      new ProducerRecord<>("incoming.steps", new JsonObject()
+        .put("deviceId", "321")
+        .put("deviceSync", 2L)
+        .put("stepsCount", 300))));
+    companion.consume(JsonObject.class)
+      .fromTopics("daily.step.updates", 2)
+      .awaitCompletion();
+
+    given()
+      .accept(ContentType.JSON)
+      .get("/device/321/total")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .body("count", equalTo(500));
+
+    String metrics = given()
+      .get("/q/metrics")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .asString();
+    assertThat(metrics).contains("cache_gets_total{cache=\"device-steps\"");
+  }
+
+  @Test
+  @DisplayName("Send events, and observe that their offsets are committed once they have been processed")
+  void observeCommittedOffsets() {
+    companion.produce(JsonObject.class).fromRecords(List.of(
+      new ProducerRecord<>("incoming.steps", "987", new JsonObject()
+        .put("deviceId", "987")
+        .put("deviceSync", 1L)
+        .put("stepsCount", 100)),
+      new ProducerRecord<>("incoming.steps", "987", new JsonObject()
+        .put("deviceId", "987")
+        .put("deviceSync", 2L)
+        .put("stepsCount", 200))));
+    awaitUpdates(Map.of("987", 300L));
+
+    // The throttled commit strategy periodically commits the offsets of the acknowledged records
+    List<TopicPartition> partitions = companion.topics().describe("incoming.steps").get("incoming.steps").partitions().stream()
+      .map(partition -> new TopicPartition("incoming.steps", partition.partition()))
+      .toList();
+    await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+      Map<TopicPartition, OffsetAndMetadata> committed = companion.consumerGroups().offsets("activity-service");
+      for (TopicPartition partition : partitions) {
+        long end = companion.offsets().get(partition, OffsetSpec.latest()).offset();
+        OffsetAndMetadata offset = committed.get(partition);
+        assertThat((offset != null) ? offset.offset() : 0L).isEqualTo(end);
+      }
+    });
+  }
+
+  // The number of updates depends on how records are polled, so updates are consumed until the expected last
+  // steps counts have been observed
+  private List<ConsumerRecord<String, JsonObject>> awaitUpdates(Map<String, Long> lastStepsCounts) {
+    try (ConsumerTask<String, JsonObject> task = companion.consume(JsonObject.class).fromTopics("daily.step.updates")) {
+      await().atMost(Duration.ofMinutes(1)).until(() -> lastStepsCounts.equals(lastStepsCounts(task.getRecords())));
+      return task.getRecords();
+    }
+  }
+
+  private static Map<String, Long> lastStepsCounts(List<ConsumerRecord<String, JsonObject>> records) {
+    Map<String, Long> counts = new HashMap<>();
+    for (ConsumerRecord<String, JsonObject> record : records) {
+      counts.put(record.value().getString("deviceId"), record.value().getLong("stepsCount"));
+    }
+    return counts;
+  }
 }
@@ -0,0 +1,8 @@
+package demo.quarkus.reactive.activity;
+
+import io.quarkus.test.junit.QuarkusIntegrationTest;
+
+@QuarkusIntegrationTest
+class ImportResourceIT extends ImportResourceTest {
+  // Execute the same tests but in packaged mode.
+}
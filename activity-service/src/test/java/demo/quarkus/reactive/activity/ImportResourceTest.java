@@ -0,0 +1,182 @@
+package demo.quarkus.reactive.activity;
+
+import io.quarkus.logging.Log;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.common.http.TestHTTPEndpoint;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@QuarkusTest
+@TestHTTPEndpoint(ImportResource.class)
+@QuarkusTestResource(PgPoolTestResource.class)
+class ImportResourceTest {
+
+  PgPool pgPool;
+
+  @BeforeEach
+  void prepareDb() {
+    TestDbSetup.cleanDb(pgPool);
+    TestDbSetup.insertTestData(pgPool);
+  }
+
+  @Test
+  @DisplayName("Import NDJSON step events, and observe that known events are skipped and aggregates are updated")
+  void importNdjson() {
+    String body = """
+      {"deviceId": "123", "deviceSync": 4, "syncTimestamp": "2023-05-21T11:00:00", "stepsCount": 320}
+      {"deviceId": "123", "deviceSync": 10, "syncTimestamp": "2023-05-22T08:00:00Z", "stepsCount": 1000}
+      {"deviceId": "123", "deviceSync": 10, "syncTimestamp": "2023-05-22T08:00:00Z", "stepsCount": 1000}
+
+      {"deviceId": "789", "deviceSync": 1, "syncTimestamp": "2023-05-22T09:00:00+02:00", "stepsCount": 50}
+      """;
+
+    JsonPath jsonPath = given()
+      .contentType("application/x-ndjson")
+      .body(body)
+      .post("/stepevents")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .contentType(ContentType.JSON)
+      .extract()
+      .jsonPath();
+
+    assertThat(jsonPath.getLong("read")).isEqualTo(4L);
+    assertThat(jsonPath.getLong("written")).isEqualTo(2L);
+
+    Row row = pgPool.query("SELECT sum(steps_count) FROM stepevent WHERE device_id = '123'")
+      .execute()
+      .await().indefinitely()
+      .iterator().next();
+    assertThat(row.getLong(0)).isEqualTo(8161L);
+
+    row = pgPool.query("SELECT sum(total) FROM daily_steps WHERE device_id = '789'")
+      .execute()
+      .await().indefinitely()
+      .iterator().next();
+    assertThat(row.getLong(0)).isEqualTo(50L);
+
+    row = pgPool.query("SELECT total FROM daily_steps WHERE device_id = '123' AND day = '2023-05-22'")
+      .execute()
+      .await().indefinitely()
+      .iterator().next();
+    assertThat(row.getLong("total")).isEqualTo(1000L);
+  }
+
+  @Test
+  @DisplayName("Import step events of past months, and observe that they are stored in their monthly partitions")
+  void importIntoMonthlyPartitions() {
+    given()
+      .contentType("text/csv")
+      .body("""
+        deviceId,deviceSync,syncTimestamp,stepsCount
+        past,1,2021-03-10T08:00:00Z,100
+        past,2,2021-05-31T12:00:00Z,200
+        """)
+      .post("/stepevents")
+      .then()
+      .assertThat()
+      .statusCode(200);
+
+    List<String> partitions = new ArrayList<>();
+    for (Row row : pgPool.query("SELECT tableoid::regclass::text FROM stepevent WHERE device_id = 'past' ORDER BY device_sync")
+      .execute()
+      .await().indefinitely()) {
+      partitions.add(row.getString(0));
+    }
+    assertThat(partitions).containsExactly("stepevent_y2021m03", "stepevent_y2021m05");
+  }
+
+  @Test
+  @DisplayName("Import a large CSV file and report the throughput")
+  void importCsv() {
+    int rows = 200_000;
+    long start = System.nanoTime();
+    JsonPath jsonPath = given()
+      .contentType("text/csv")
+      .body(csv(rows))
+      .post("/stepevents")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .jsonPath();
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+    Log.info("Imported " + rows + " rows in " + elapsedMillis + "ms (" + (rows * 60_000L / Math.max(1L, elapsedMillis)) + " rows/min)");
+
+    assertThat(jsonPath.getLong("read")).isEqualTo(rows);
+    assertThat(jsonPath.getLong("written")).isEqualTo(rows);
+    Row row = pgPool.query("SELECT sum(total) FROM daily_steps WHERE device_id LIKE 'csv-%'")
+      .execute()
+      .await().indefinitely()
+      .iterator().next();
+    assertThat(row.getLong(0)).isEqualTo(rows * 10L);
+  }
+
+  @Test
+  @DisplayName("Import invalid step events, and observe that nothing is written")
+  void importInvalid() {
+    given()
+      .contentType("text/csv")
+      .body("""
+        deviceId,deviceSync,syncTimestamp,stepsCount
+        abc,10,2023-05-22T08:00:00,100
+        abc,11,yesterday,100
+        """)
+      .post("/stepevents")
+      .then()
+      .assertThat()
+      .statusCode(400);
+
+    given()
+      .contentType("application/x-ndjson")
+      .body("{\"deviceId\": \"abc\", \"deviceSync\": 12}\n")
+      .post("/stepevents")
+      .then()
+      .assertThat()
+      .statusCode(400);
+
+    Row row = pgPool.query("SELECT count(*) FROM stepevent WHERE device_id = 'abc'")
+      .execute()
+      .await().indefinitely()
+      .iterator().next();
+    assertThat(row.getLong(0)).isEqualTo(2L);
+  }
+
+  // Generated as it is sent, with events spread over 100 devices
+  private static InputStream csv(int rows) {
+    Enumeration<InputStream> lines = new Enumeration<>() {
+      int next = 0;
+
+      @Override
+      public boolean hasMoreElements() {
+        return next < rows;
+      }
+
+      @Override
+      public InputStream nextElement() {
+        int i = next++;
+        String line = "csv-" + (i % 100) + "," + i + ",2023-01-01T00:00:00Z,10\n";
+        return new ByteArrayInputStream(line.getBytes(StandardCharsets.UTF_8));
+      }
+    };
+    return new SequenceInputStream(lines);
+  }
+}
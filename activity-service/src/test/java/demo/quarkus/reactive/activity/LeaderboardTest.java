@@ -0,0 +1,110 @@
+package demo.quarkus.reactive.activity;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeaderboardTest {
+
+  // On a bucket boundary
+  private static final long NOW = 28_000_000L;
+
+  @Test
+  @DisplayName("Rank devices by steps count, then by device identifier")
+  void ranking() {
+    Leaderboard leaderboard = new Leaderboard();
+    leaderboard.record("abc", NOW - 60, 1000);
+    leaderboard.record("def", NOW - 120, 100);
+    leaderboard.record("def", NOW - 30, 900);
+    leaderboard.record("abc", NOW, 1500);
+    leaderboard.record("ghi", NOW, 1000);
+    leaderboard.advanceTo(NOW);
+
+    assertThat(leaderboard.top(0, 10)).containsExactly(
+      new Leaderboard.Entry("abc", 2500),
+      new Leaderboard.Entry("def", 1000),
+      new Leaderboard.Entry("ghi", 1000));
+    assertThat(leaderboard.top(1, 1)).containsExactly(new Leaderboard.Entry("def", 1000));
+    assertThat(leaderboard.top(3, 10)).isEmpty();
+  }
+
+  @Test
+  @DisplayName("Page through the ranking with a keyset")
+  void keyset() {
+    Leaderboard leaderboard = new Leaderboard();
+    leaderboard.record("abc", NOW, 2500);
+    leaderboard.record("def", NOW, 1000);
+    leaderboard.record("ghi", NOW, 1000);
+    leaderboard.record("jkl", NOW, 10);
+    leaderboard.advanceTo(NOW);
+
+    assertThat(leaderboard.top(new Leaderboard.Entry("abc", 2500), 0, 2)).containsExactly(
+      new Leaderboard.Entry("def", 1000),
+      new Leaderboard.Entry("ghi", 1000));
+    assertThat(leaderboard.top(new Leaderboard.Entry("ghi", 1000), 0, 2)).containsExactly(
+      new Leaderboard.Entry("jkl", 10));
+    // The keyset entry does not need to be in the ranking
+    assertThat(leaderboard.top(new Leaderboard.Entry("zzz", 2000), 0, 1)).containsExactly(
+      new Leaderboard.Entry("def", 1000));
+  }
+
+  @Test
+  @DisplayName("Publish the ranking on each rollover")
+  void rollover() {
+    Leaderboard leaderboard = new Leaderboard();
+    leaderboard.record("abc", NOW, 500);
+    assertThat(leaderboard.top(0, 10)).isEmpty();
+
+    leaderboard.advanceTo(NOW);
+    leaderboard.record("abc", NOW + 1, 100);
+    assertThat(leaderboard.top(0, 10)).containsExactly(new Leaderboard.Entry("abc", 500));
+
+    leaderboard.advanceTo(NOW + 1);
+    assertThat(leaderboard.top(0, 10)).containsExactly(new Leaderboard.Entry("abc", 600));
+  }
+
+  @Test
+  @DisplayName("Expire the buckets that leave the 24 hours window")
+  void expiration() {
+    int windowMinutes = Leaderboard.WINDOW_BUCKETS * Leaderboard.BUCKET_MINUTES;
+    Leaderboard leaderboard = new Leaderboard();
+    // Oldest bucket of the window
+    leaderboard.record("abc", NOW - windowMinutes + Leaderboard.BUCKET_MINUTES, 1000);
+    leaderboard.record("abc", NOW, 500);
+    leaderboard.record("def", NOW - 10, 100);
+
+    leaderboard.advanceTo(NOW);
+    assertThat(leaderboard.top(0, 10)).containsExactly(
+      new Leaderboard.Entry("abc", 1500),
+      new Leaderboard.Entry("def", 100));
+
+    // Buckets leave the window as a whole
+    leaderboard.advanceTo(NOW + Leaderboard.BUCKET_MINUTES - 1);
+    assertThat(leaderboard.top(0, 10)).containsExactly(
+      new Leaderboard.Entry("abc", 1500),
+      new Leaderboard.Entry("def", 100));
+
+    leaderboard.advanceTo(NOW + Leaderboard.BUCKET_MINUTES);
+    assertThat(leaderboard.top(0, 10)).containsExactly(
+      new Leaderboard.Entry("abc", 500),
+      new Leaderboard.Entry("def", 100));
+
+    leaderboard.advanceTo(NOW + windowMinutes - 10);
+    assertThat(leaderboard.top(0, 10)).containsExactly(new Leaderboard.Entry("abc", 500));
+
+    leaderboard.advanceTo(NOW + 2 * windowMinutes);
+    assertThat(leaderboard.top(0, 10)).isEmpty();
+  }
+
+  @Test
+  @DisplayName("Ignore events that are older than the window")
+  void outdatedEvent() {
+    Leaderboard leaderboard = new Leaderboard();
+    leaderboard.record("abc", NOW, 500);
+    leaderboard.record("abc", NOW - Leaderboard.WINDOW_BUCKETS * Leaderboard.BUCKET_MINUTES, 1000);
+    leaderboard.advanceTo(NOW);
+
+    assertThat(leaderboard.top(0, 10)).containsExactly(new Leaderboard.Entry("abc", 500));
+  }
+}
@@ -2,10 +2,13 @@ package demo.quarkus.reactive.activity;
 
 import io.quarkus.test.common.QuarkusTestResource;
 import io.quarkus.test.common.http.TestHTTPEndpoint;
+import io.quarkus.test.junit.DisabledOnIntegrationTest;
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.http.ContentType;
 import io.restassured.path.json.JsonPath;
+import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.pgclient.PgPool;
+import jakarta.inject.Inject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -23,15 +26,26 @@ class RankingResourceTest {
 
   PgPool pgPool;
 
+  @Inject
+  Leaderboard leaderboard;
+
   @BeforeEach
   void prepareDb() {
     TestDbSetup.cleanDb(pgPool);
     TestDbSetup.insertTestData(pgPool);
   }
 
+  // The ranking is served from memory, so it has to be rebuilt from the test data (which is only possible when the
+  // application runs in the test JVM)
+  private void rebuildLeaderboard() {
+    leaderboard.rebuild().await().indefinitely();
+  }
+
   @Test
+  @DisabledOnIntegrationTest
   @DisplayName("Fetch the ranking over the last 24 hours")
   void checkRanking24Hours() {
+    rebuildLeaderboard();
     JsonPath jsonPath = given()
       .accept(ContentType.JSON)
       .get("/last-24-hours")
@@ -49,4 +63,111 @@ class RankingResourceTest {
       .containsEntry("deviceId", "def")
       .containsEntry("stepsCount", 1000);
   }
+
+  @Test
+  @DisabledOnIntegrationTest
+  @DisplayName("Fetch pages of the ranking over the last 24 hours")
+  void checkRanking24HoursPages() {
+    rebuildLeaderboard();
+    JsonPath jsonPath = given()
+      .accept(ContentType.JSON)
+      .queryParam("limit", 1)
+      .get("/last-24-hours")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .jsonPath();
+    List<HashMap<String, Object>> data = jsonPath.getList("$");
+    assertThat(data.size()).isEqualTo(1);
+    assertThat(data.getFirst()).containsEntry("deviceId", "abc");
+
+    jsonPath = given()
+      .accept(ContentType.JSON)
+      .queryParam("offset", 1)
+      .queryParam("limit", 10)
+      .get("/last-24-hours")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .jsonPath();
+    data = jsonPath.getList("$");
+    assertThat(data.size()).isEqualTo(1);
+    assertThat(data.getFirst()).containsEntry("deviceId", "def");
+
+    given()
+      .accept(ContentType.JSON)
+      .queryParam("offset", -1)
+      .get("/last-24-hours")
+      .then()
+      .assertThat()
+      .statusCode(400);
+  }
+
+  @Test
+  @DisabledOnIntegrationTest
+  @DisplayName("Page through the ranking over the last 24 hours with a keyset")
+  void checkRanking24HoursKeyset() {
+    rebuildLeaderboard();
+    JsonPath jsonPath = given()
+      .accept(ContentType.JSON)
+      .queryParam("after", "2500,abc")
+      .get("/last-24-hours")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .jsonPath();
+    List<HashMap<String, Object>> data = jsonPath.getList("$");
+    assertThat(data.size()).isEqualTo(1);
+    assertThat(data.getFirst()).containsEntry("deviceId", "def");
+
+    given()
+      .accept(ContentType.JSON)
+      .queryParam("after", "abc")
+      .get("/last-24-hours")
+      .then()
+      .assertThat()
+      .statusCode(400);
+  }
+
+  @Test
+  @DisplayName("Stream the ranking over the last 24 hours as NDJSON")
+  void checkRanking24HoursStream() {
+    String body = given()
+      .accept("application/x-ndjson")
+      .get("/last-24-hours/stream")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .asString();
+    List<JsonObject> lines = body.lines()
+      .filter(line -> !line.isBlank())
+      .map(JsonObject::new)
+      .toList();
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0).getString("deviceId")).isEqualTo("abc");
+    assertThat(lines.get(0).getLong("stepsCount")).isEqualTo(2500L);
+    assertThat(lines.get(1).getString("deviceId")).isEqualTo("def");
+    assertThat(lines.get(1).getLong("stepsCount")).isEqualTo(1000L);
+
+    body = given()
+      .accept("application/x-ndjson")
+      .queryParam("after", "2500,abc")
+      .queryParam("limit", 10)
+      .get("/last-24-hours/stream")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .asString();
+    lines = body.lines()
+      .filter(line -> !line.isBlank())
+      .map(JsonObject::new)
+      .toList();
+    assertThat(lines).hasSize(1);
+    assertThat(lines.getFirst().getString("deviceId")).isEqualTo("def");
+  }
 }
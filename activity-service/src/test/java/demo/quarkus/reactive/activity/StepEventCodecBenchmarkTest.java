@@ -0,0 +1,66 @@
+package demo.quarkus.reactive.activity;
+
+import com.sun.management.ThreadMXBean;
+import io.quarkus.kafka.client.serialization.JsonObjectDeserializer;
+import io.quarkus.logging.Log;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ToLongFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Load harness, run with -Pbenchmark
+@Tag("benchmark")
+class StepEventCodecBenchmarkTest {
+
+  private static final int MESSAGES = 200_000;
+  private static final int ROUNDS = 5;
+
+  private static final byte[] MESSAGE = """
+    {"deviceId":"a1b2c3d4-e5f6","deviceSync":1712345678,"stepsCount":1234}""".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  @DisplayName("Compare the cost of decoding step events as JsonObject and as typed records")
+  void decode() {
+    JsonObjectDeserializer jsonObjectDeserializer = new JsonObjectDeserializer();
+    StepEventDeserializer stepEventDeserializer = new StepEventDeserializer();
+
+    JsonObject json = jsonObjectDeserializer.deserialize("incoming.steps", MESSAGE);
+    StepEvent event = stepEventDeserializer.deserialize("incoming.steps", MESSAGE);
+    assertThat(event).isEqualTo(new StepEvent(json.getString("deviceId"), json.getLong("deviceSync"), json.getInteger("stepsCount")));
+
+    report("JsonObject", bytes -> {
+      JsonObject data = jsonObjectDeserializer.deserialize("incoming.steps", bytes);
+      return data.getLong("deviceSync") + data.getInteger("stepsCount") + data.getString("deviceId").length();
+    });
+    report("StepEvent", bytes -> {
+      StepEvent data = stepEventDeserializer.deserialize("incoming.steps", bytes);
+      return data.deviceSync() + data.stepsCount() + data.deviceId().length();
+    });
+  }
+
+  private static void report(String name, ToLongFunction<byte[]> decoder) {
+    ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long sink = 0L;
+    // Warm-up
+    for (int i = 0; i < MESSAGES; i++) {
+      sink += decoder.applyAsLong(MESSAGE);
+    }
+    long bytesBefore = threadMXBean.getCurrentThreadAllocatedBytes();
+    long cpuBefore = threadMXBean.getCurrentThreadCpuTime();
+    for (int round = 0; round < ROUNDS; round++) {
+      for (int i = 0; i < MESSAGES; i++) {
+        sink += decoder.applyAsLong(MESSAGE);
+      }
+    }
+    long messages = (long) ROUNDS * MESSAGES;
+    long bytesPerMessage = (threadMXBean.getCurrentThreadAllocatedBytes() - bytesBefore) / messages;
+    long nanosPerMessage = (threadMXBean.getCurrentThreadCpuTime() - cpuBefore) / messages;
+    Log.info(name + ": " + bytesPerMessage + " bytes and " + nanosPerMessage + "ns of CPU per message (" + sink + ")");
+  }
+}
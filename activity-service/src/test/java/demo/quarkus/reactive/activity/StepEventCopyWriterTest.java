@@ -0,0 +1,45 @@
+package demo.quarkus.reactive.activity;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StepEventCopyWriterTest {
+
+  @Test
+  @DisplayName("Encode a step event in the binary COPY format")
+  void encode() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    StepEventCopyWriter writer = new StepEventCopyWriter(bytes);
+    writer.write("abc", 42L, Instant.parse("2000-01-01T00:00:01Z"), 1200);
+    writer.finish();
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    byte[] signature = new byte[11];
+    in.readFully(signature);
+    assertThat(new String(signature, 0, 6, StandardCharsets.US_ASCII)).isEqualTo("PGCOPY");
+    assertThat(in.readInt()).isZero();
+    assertThat(in.readInt()).isZero();
+
+    assertThat(in.readShort()).isEqualTo((short) 4);
+    assertThat(in.readInt()).isEqualTo(3);
+    assertThat(new String(in.readNBytes(3), StandardCharsets.UTF_8)).isEqualTo("abc");
+    assertThat(in.readInt()).isEqualTo(8);
+    assertThat(in.readLong()).isEqualTo(42L);
+    assertThat(in.readInt()).isEqualTo(8);
+    assertThat(in.readLong()).isEqualTo(1_000_000L);
+    assertThat(in.readInt()).isEqualTo(4);
+    assertThat(in.readInt()).isEqualTo(1200);
+
+    assertThat(in.readShort()).isEqualTo((short) -1);
+    assertThat(in.available()).isZero();
+  }
+}
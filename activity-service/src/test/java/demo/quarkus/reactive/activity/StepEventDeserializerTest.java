@@ -0,0 +1,42 @@
+package demo.quarkus.reactive.activity;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StepEventDeserializerTest {
+
+  private final StepEventDeserializer deserializer = new StepEventDeserializer();
+
+  @Test
+  @DisplayName("Decode a step event, and skip unknown fields")
+  void decode() {
+    assertThat(deserialize("""
+      {"deviceId":"abc","extra":{"a":[1,2]},"deviceSync":12,"stepsCount":300}"""))
+      .isEqualTo(new StepEvent("abc", 12L, 300));
+  }
+
+  @Test
+  @DisplayName("Reject step events with missing, null or mistyped fields")
+  void rejectIncomplete() {
+    for (String json : new String[]{
+      "{\"deviceSync\":12,\"stepsCount\":300}",
+      "{\"deviceId\":\"abc\",\"stepsCount\":300}",
+      "{\"deviceId\":\"abc\",\"deviceSync\":12}",
+      "{\"deviceId\":null,\"deviceSync\":12,\"stepsCount\":300}",
+      "{\"deviceId\":\"abc\",\"deviceSync\":\"twelve\",\"stepsCount\":300}",
+      "[]"
+    }) {
+      assertThatThrownBy(() -> deserialize(json)).as(json).isInstanceOf(SerializationException.class);
+    }
+  }
+
+  private StepEvent deserialize(String json) {
+    return deserializer.deserialize("incoming.steps", json.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -10,7 +10,7 @@ import java.util.List;
 class TestDbSetup {
 
   static void cleanDb(PgPool pgPool) {
-    pgPool.query("TRUNCATE TABLE stepevent").execute()
+    pgPool.query("TRUNCATE TABLE stepevent, stepevent_sync, daily_steps, activity_outbox").execute()
       .await()
       .indefinitely();
   }
@@ -32,6 +32,15 @@ class TestDbSetup {
     pgPool.preparedQuery("INSERT INTO stepevent VALUES($1, $2, $3::timestamp, $4)").executeBatch(data)
       .await()
       .indefinitely();
+
+    // The ledger knows every stored event
+    pgPool.query("INSERT INTO stepevent_sync SELECT device_id, device_sync, sync_timestamp FROM stepevent").execute()
+      .await()
+      .indefinitely();
+
+    pgPool.query(SqlQueries.rebuildDailySteps()).execute()
+      .await()
+      .indefinitely();
   }
 
   private TestDbSetup() {
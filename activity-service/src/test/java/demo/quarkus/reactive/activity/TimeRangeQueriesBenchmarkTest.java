@@ -0,0 +1,110 @@
+package demo.quarkus.reactive.activity;
+
+import io.quarkus.logging.Log;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Load harness, run with -Pbenchmark
+@QuarkusTest
+@Tag("benchmark")
+@QuarkusTestResource(PgPoolTestResource.class)
+class TimeRangeQueriesBenchmarkTest {
+
+  private static final int DEVICES = 500;
+  private static final int EVENTS_PER_DEVICE = 400;
+  private static final int ROUNDS = 20;
+
+  PgPool pgPool;
+
+  @BeforeEach
+  void seed() {
+    TestDbSetup.cleanDb(pgPool);
+    // One event every 3 hours per device, going back ~50 days
+    pgPool.query("""
+        INSERT INTO stepevent
+        SELECT 'device-' || d, s, now() - (s * interval '3 hours'), 100
+        FROM generate_series(1, %d) AS d, generate_series(1, %d) AS s"""
+        .formatted(DEVICES, EVENTS_PER_DEVICE))
+      .execute()
+      .await().indefinitely();
+    pgPool.query("ANALYZE stepevent").execute()
+      .await().indefinitely();
+  }
+
+  @AfterEach
+  void cleanup() {
+    TestDbSetup.cleanDb(pgPool);
+  }
+
+  @Test
+  @DisplayName("Compare the ranking query with the former non-sargable predicate")
+  void rankingLast24Hours() {
+    String legacy = """
+      SELECT device_id, SUM(steps_count) as steps
+      FROM stepevent
+      WHERE (now() - sync_timestamp <= (interval '24 hours'))
+      GROUP BY device_id
+      ORDER BY steps DESC""";
+
+    Tuple params = Tuple.of(null, null, null);
+    assertThat(plan(SqlQueries.rankingLast24Hours(), params)).contains("Index");
+    report("rankingLast24Hours", legacy, SqlQueries.rankingLast24Hours(), Tuple.tuple(), params);
+  }
+
+  @Test
+  @DisplayName("Compare the monthly steps count query with the former non-sargable predicate")
+  void monthlyStepsCount() {
+    String legacy = """
+      SELECT sum(steps_count)
+      FROM stepevent
+      WHERE (device_id = $1)
+        AND (date_trunc('month', sync_timestamp) = $2::timestamp)""";
+
+    LocalDateTime start = LocalDateTime.now().withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0).withNano(0);
+    Tuple legacyParams = Tuple.of("device-42", start);
+    Tuple params = Tuple.of("device-42", start, start.plusMonths(1));
+
+    assertThat(plan(SqlQueries.monthlyStepsCount(), params)).contains("Index");
+    report("monthlyStepsCount", legacy, SqlQueries.monthlyStepsCount(), legacyParams, params);
+  }
+
+  private String plan(String query, Tuple params) {
+    Iterable<Row> rows = pgPool.preparedQuery("EXPLAIN " + query).execute(params)
+      .await().indefinitely();
+    String plan = StreamSupport.stream(rows.spliterator(), false)
+      .map(row -> row.getString(0))
+      .collect(Collectors.joining("\n"));
+    Log.info("Query plan:\n" + plan);
+    return plan;
+  }
+
+  private void report(String name, String legacy, String query, Tuple legacyParams, Tuple params) {
+    double legacyMillis = averageMillis(legacy, legacyParams);
+    double millis = averageMillis(query, params);
+    Log.info(name + " over " + (DEVICES * EVENTS_PER_DEVICE) + " rows: legacy=" + legacyMillis + "ms, range=" + millis + "ms");
+  }
+
+  private double averageMillis(String query, Tuple params) {
+    // Warm-up
+    pgPool.preparedQuery(query).execute(params).await().indefinitely();
+    long start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      pgPool.preparedQuery(query).execute(params).await().indefinitely();
+    }
+    return (System.nanoTime() - start) / (ROUNDS * 1_000_000.0d);
+  }
+}
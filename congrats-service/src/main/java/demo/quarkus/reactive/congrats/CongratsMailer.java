@@ -1,5 +1,6 @@
 package demo.quarkus.reactive.congrats;
 
+import demo.quarkus.reactive.user.profile.replica.ProfileReplica;
 import io.quarkus.logging.Log;
 import io.quarkus.mailer.Mail;
 import io.quarkus.mailer.reactive.ReactiveMailer;
@@ -29,6 +30,9 @@ public class CongratsMailer {
   @Inject
   ReactiveMailer reactiveMailer;
 
+  @Inject
+  ProfileReplica replica;
+
   private WebClient webClient;
 
   @PostConstruct
@@ -45,11 +49,17 @@ public class CongratsMailer {
       return Uni.createFrom().voidItem();
     }
     Log.info("Above 10k: " + deviceId);
-    return fetchOwner(deviceId)
-      .onItem().transformToUni(username -> fetchEmailAddress(username))
+    return emailAddress(deviceId)
       .onItem().transformToUni(recipient -> sendEmail(recipient, payload));
   }
 
+  // From the local profile replica when available, otherwise from user-profile-service
+  private Uni<String> emailAddress(String deviceId) {
+    return replica.findByDeviceId(deviceId)
+      .map(profile -> Uni.createFrom().item(profile.email()))
+      .orElseGet(() -> fetchOwner(deviceId).onItem().transformToUni(this::fetchEmailAddress));
+  }
+
   private static boolean below10k(JsonObject payload) {
     return payload.getInteger("stepsCount") < 10_000;
   }
@@ -0,0 +1,4 @@
+package demo.quarkus.reactive.event.stats;
+
+public record CityTrend(String timestamp, int seconds, String city, long stepsCount, int updates) {
+}
@@ -0,0 +1,104 @@
+package demo.quarkus.reactive.event.stats;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Aggregates user activity updates into city trends over hopping windows (tumbling when the hop is the window length),
+// closed by a single timer for all the cities.
+//
+// Daily steps counts are cumulative, so an update contributes the steps made since the former update of the same
+// user in the same city (a user has a single device). Only the last count of each user is kept, and it is forgotten
+// when the user has been idle for a while. Cities are forgotten as soon as they have been idle for a
+// whole window.
+final class CityTrendAggregator {
+
+  private static final class CityState {
+
+    // Per hop of the window, as a ring
+    final long[] stepsCounts;
+    final int[] updates;
+
+    CityState(int hops) {
+      stepsCounts = new long[hops];
+      updates = new int[hops];
+    }
+  }
+
+  // Idle users are looked for in a slice of the table per hop, a full sweep spreading over several hops for large tables
+  private static final int EXPIRY_SLOTS_PER_HOP = 4096;
+
+  private final int windowSeconds;
+  private final int hops;
+  private final long userExpirySeconds;
+  private final Map<String, CityState> cities = new HashMap<>();
+  private final LastStepsMap lastStepsCounts = new LastStepsMap(1024);
+  private int currentHop;
+
+  CityTrendAggregator(int windowSeconds, int hopSeconds, long userExpirySeconds) {
+    if (hopSeconds <= 0 || windowSeconds % hopSeconds != 0) {
+      throw new IllegalArgumentException("The window length must be a multiple of the hop length");
+    }
+    this.windowSeconds = windowSeconds;
+    this.hops = windowSeconds / hopSeconds;
+    this.userExpirySeconds = userExpirySeconds;
+  }
+
+  synchronized void record(UserActivity activity, long nowSecond) {
+    long key = Hashes.hash64(activity.city() + '\n' + activity.username());
+    long delta = lastStepsCounts.update(key, day(activity.timestamp()), activity.stepsCount(), nowSecond);
+    CityState city = cities.computeIfAbsent(activity.city(), k -> new CityState(hops));
+    city.stepsCounts[currentHop] += delta;
+    city.updates[currentHop]++;
+  }
+
+  // Closes the current hop, and returns the trends of the cities updated during the window ending with it
+  synchronized List<CityTrend> closeHop(String timestamp, long nowSecond) {
+    List<CityTrend> trends = new ArrayList<>();
+    int oldestHop = (currentHop + 1) % hops;
+    Iterator<Map.Entry<String, CityState>> iterator = cities.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, CityState> entry = iterator.next();
+      CityState city = entry.getValue();
+      long stepsCount = 0L;
+      int updates = 0;
+      for (int hop = 0; hop < hops; hop++) {
+        stepsCount += city.stepsCounts[hop];
+        updates += city.updates[hop];
+      }
+      if (updates > 0) {
+        trends.add(new CityTrend(timestamp, windowSeconds, entry.getKey(), stepsCount, updates));
+      } else {
+        iterator.remove();
+        continue;
+      }
+      // The oldest hop leaves the window
+      city.stepsCounts[oldestHop] = 0L;
+      city.updates[oldestHop] = 0;
+    }
+    currentHop = oldestHop;
+    lastStepsCounts.expire(nowSecond - userExpirySeconds, EXPIRY_SLOTS_PER_HOP);
+    return trends;
+  }
+
+  synchronized int users() {
+    return lastStepsCounts.size();
+  }
+
+  synchronized int cities() {
+    return cities.size();
+  }
+
+  // Daily updates are timestamped with local date-times, unparseable ones count as the same day
+  private static int day(String timestamp) {
+    try {
+      return (int) LocalDate.parse(timestamp.substring(0, Math.min(10, timestamp.length()))).toEpochDay();
+    } catch (DateTimeParseException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,5 @@
+package demo.quarkus.reactive.event.stats;
+
+// Published by the activity service, the timestamp is kept as sent
+public record DailyUpdate(String deviceId, String timestamp, long stepsCount) {
+}
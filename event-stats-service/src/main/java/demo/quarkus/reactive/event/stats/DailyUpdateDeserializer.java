@@ -0,0 +1,10 @@
+package demo.quarkus.reactive.event.stats;
+
+import io.quarkus.kafka.client.serialization.ObjectMapperDeserializer;
+
+public class DailyUpdateDeserializer extends ObjectMapperDeserializer<DailyUpdate> {
+
+  public DailyUpdateDeserializer() {
+    super(DailyUpdate.class);
+  }
+}
@@ -1,27 +1,29 @@
 package demo.quarkus.reactive.event.stats;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.quarkus.logging.Log;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.reactive.messaging.kafka.KafkaRecord;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.mutiny.core.Vertx;
-import io.vertx.mutiny.ext.web.client.HttpResponse;
-import io.vertx.mutiny.ext.web.client.WebClient;
-import io.vertx.mutiny.ext.web.client.predicate.ResponsePredicate;
-import io.vertx.mutiny.ext.web.codec.BodyCodec;
 import jakarta.annotation.PostConstruct;
-import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.reactive.messaging.Acknowledgment;
 import org.eclipse.microprofile.reactive.messaging.Incoming;
 import org.eclipse.microprofile.reactive.messaging.Message;
 import org.eclipse.microprofile.reactive.messaging.Outgoing;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import static org.eclipse.microprofile.reactive.messaging.Acknowledgment.Strategy.PRE_PROCESSING;
 
@@ -29,29 +31,99 @@ import static org.eclipse.microprofile.reactive.messaging.Acknowledgment.Strateg
 public class EventStatsProcessor {
 
   @Inject
-  Vertx vertx;
+  OwnerProfiles ownerProfiles;
 
-  private WebClient webClient;
+  @Inject
+  MeterRegistry registry;
+
+  // Updates of a device always go to the same lane, and lanes are enriched concurrently
+  @ConfigProperty(name = "event-stats.enrichment.lanes", defaultValue = "8")
+  int lanes;
+
+  private static final int THROUGHPUT_SECONDS = 5;
+
+  // Sliding windows of the throughput updates, besides the last 5 seconds
+  @ConfigProperty(name = "event-stats.throughput.windows", defaultValue = "5s,1m,5m")
+  List<Duration> throughputWindowDurations;
+
+  // City trends cover the last window, and are updated every hop (tumbling windows when both are equal)
+  @ConfigProperty(name = "event-stats.city-trends.window", defaultValue = "5s")
+  Duration cityTrendWindow;
+
+  @ConfigProperty(name = "event-stats.city-trends.hop", defaultValue = "5s")
+  Duration cityTrendHop;
+
+  // The last steps count of a user is forgotten after this idle time
+  @ConfigProperty(name = "event-stats.city-trends.user-expiry", defaultValue = "24h")
+  Duration cityTrendUserExpiry;
+
+  private Timer enrichmentTimer;
+  private ThroughputWindows throughputWindows;
+  private CityTrendAggregator cityTrendAggregator;
 
   @PostConstruct
   void init() {
-    webClient = WebClient.create(vertx);
+    int maxWindowSeconds = THROUGHPUT_SECONDS;
+    for (Duration duration : throughputWindowDurations) {
+      maxWindowSeconds = Math.max(maxWindowSeconds, (int) duration.toSeconds());
+    }
+    throughputWindows = new ThroughputWindows(maxWindowSeconds);
+    cityTrendAggregator = new CityTrendAggregator(
+      (int) cityTrendWindow.toSeconds(),
+      (int) cityTrendHop.toSeconds(),
+      cityTrendUserExpiry.toSeconds());
+    Gauge.builder("event-stats.city-trends.users", cityTrendAggregator, CityTrendAggregator::users)
+      .description("Users whose last steps count is kept for the city trends")
+      .register(registry);
+    Gauge.builder("event-stats.city-trends.cities", cityTrendAggregator, CityTrendAggregator::cities)
+      .description("Cities with updates in the current city trend window")
+      .register(registry);
+    enrichmentTimer = Timer.builder("event-stats.enrichment")
+      .description("Time to add the owner data to a daily update")
+      .publishPercentiles(0.5, 0.99)
+      .register(registry);
   }
 
+  // Every step event is counted, without being kept
   @Incoming("steps")
   @Acknowledgment(PRE_PROCESSING)
+  public void countStep(StepEvent event) {
+    throughputWindows.record(event.deviceId(), Instant.now().getEpochSecond());
+  }
+
+  // Ticks on 5 seconds boundaries, so that the 5 seconds windows of consecutive updates do not overlap
   @Outgoing("throughput")
-  public Multi<JsonObject> throughput(Multi<JsonObject> stream) {
-    return stream
-      .group().intoLists().every(Duration.ofSeconds(5), true)
-      .onItem().transform(EventStatsProcessor::computeThroughput);
+  public Multi<JsonObject> throughput() {
+    long period = THROUGHPUT_SECONDS * 1000L;
+    return Multi.createFrom().ticks()
+      .startingAfter(Duration.ofMillis(period - Math.floorMod(System.currentTimeMillis(), period)))
+      .every(Duration.ofSeconds(THROUGHPUT_SECONDS))
+      .onOverflow().drop()
+      .onItem().transform(tick -> {
+        // Ticks may fire slightly before or after the boundary
+        long endSecond = Math.round(System.currentTimeMillis() / (double) period) * THROUGHPUT_SECONDS;
+        return computeThroughput(endSecond);
+      });
   }
 
-  private static JsonObject computeThroughput(List<JsonObject> list) {
+  private JsonObject computeThroughput(long endSecond) {
+    ThroughputWindows.Window last = throughputWindows.window(endSecond, THROUGHPUT_SECONDS);
+    JsonArray windows = new JsonArray();
+    for (Duration duration : throughputWindowDurations) {
+      ThroughputWindows.Window window = throughputWindows.window(endSecond, (int) duration.toSeconds());
+      windows.add(new JsonObject()
+        .put("seconds", window.seconds())
+        .put("count", window.count())
+        .put("throughput", window.throughput())
+        .put("minPerSecond", window.minPerSecond())
+        .put("maxPerSecond", window.maxPerSecond())
+        .put("devices", window.devices()));
+    }
     JsonObject result = new JsonObject()
-      .put("seconds", 5)
-      .put("count", list.size())
-      .put("throughput", (((double) list.size()) / 5.0d));
+      .put("seconds", THROUGHPUT_SECONDS)
+      .put("count", last.count())
+      .put("throughput", last.throughput())
+      .put("windows", windows);
     Log.info("Throughput computed: " + result.encode());
     return result;
   }
@@ -59,78 +131,68 @@ public class EventStatsProcessor {
   @Incoming("updates")
   @Acknowledgment(PRE_PROCESSING)
   @Outgoing("userActivityOut")
-  public Multi<Message<JsonObject>> userActivity(Multi<Message<JsonObject>> stream) {
+  public Multi<Message<UserActivity>> userActivity(Multi<Message<DailyUpdate>> stream) {
+    // A device belongs to a single user, so the updates of a user stay in order
     return stream
-      .onItem().transformToUniAndConcatenate(this::addDeviceOwner)
-      .onItem().transformToUniAndConcatenate(this::addOwnerData)
+      .group().by(record -> lane(record.getPayload().deviceId()))
+      .onItem().transformToMulti(lane -> lane.onItem().transformToUniAndConcatenate(this::addOwnerData)).merge(lanes)
       .onItem().transform(EventStatsProcessor::computeUserActivity);
   }
 
-  private Uni<Message<JsonObject>> addDeviceOwner(Message<JsonObject> record) {
-    JsonObject payload = record.getPayload();
-    String deviceId = payload.getString("deviceId");
-    return webClient.get(3000, "localhost", "/owns/" + deviceId)
-      .expect(ResponsePredicate.SC_OK)
-      .expect(ResponsePredicate.JSON)
-      .as(BodyCodec.jsonObject())
-      .send()
-      .onItem().transform(HttpResponse::body)
-      .onItem().transform(payload::mergeIn)
-      .onItem().transform(record::withPayload)
-      .onFailure().retry().withBackOff(Duration.ofSeconds(10)).atMost(3);
+  private Uni<Message<UserActivity>> addOwnerData(Message<DailyUpdate> record) {
+    DailyUpdate update = record.getPayload();
+    long start = System.nanoTime();
+    return ownerProfiles.get(update.deviceId())
+      .onItem().transform(owner -> record.withPayload(new UserActivity(
+        update.deviceId(),
+        update.timestamp(),
+        update.stepsCount(),
+        owner.username(),
+        owner.city(),
+        owner.makePublic())))
+      .onItem().invoke(() -> enrichmentTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+      // The update is dropped rather than failing the stream, which would stop the enrichment of every device (the
+      // updates are acknowledged before processing, and the next update of the device is a complete daily count)
+      .onFailure().recoverWithUni(err -> {
+        Log.error("Dropping the daily update of device " + update.deviceId() + ", its owner could not be fetched", err);
+        // A null item does not get emitted
+        return Uni.createFrom().nullItem();
+      });
   }
 
-  private Uni<Message<JsonObject>> addOwnerData(Message<JsonObject> record) {
-    JsonObject payload = record.getPayload();
-    String username = payload.getString("username");
-    return webClient.get(3000, "localhost", "/" + username)
-      .expect(ResponsePredicate.SC_OK)
-      .expect(ResponsePredicate.JSON)
-      .as(BodyCodec.jsonObject())
-      .send()
-      .onItem().transform(HttpResponse::body)
-      .onItem().transform(payload::mergeIn)
-      .onItem().transform(record::withPayload)
-      .onFailure().retry().withBackOff(Duration.ofSeconds(10)).atMost(3);
+  private int lane(String deviceId) {
+    return Math.floorMod(Objects.hashCode(deviceId), lanes);
   }
 
-  private static Message<JsonObject> computeUserActivity(Message<JsonObject> message) {
-    JsonObject payload = message.getPayload();
-    Log.info("User activity computed: " + payload.encode());
-    return KafkaRecord.of(payload.getString("username"), payload);
+  private static Message<UserActivity> computeUserActivity(Message<UserActivity> message) {
+    UserActivity activity = message.getPayload();
+    Log.info("User activity computed: " + activity);
+    return KafkaRecord.of(activity.username(), activity);
   }
 
+  // Every user activity update is added to the current hop of its city
   @Incoming("userActivityIn")
   @Acknowledgment(PRE_PROCESSING)
-  @Outgoing("cityTrends")
-  public Multi<Message<JsonObject>> cityTrends(Multi<Message<JsonObject>> stream) {
-    return stream
-      .group().by(msg -> extractCity(msg.getPayload()))
-      .onItem().transformToMultiAndMerge(byCity -> byCity.group().intoLists().every(Duration.ofSeconds(5)))
-      .onItem().transform(EventStatsProcessor::computeCityTrend);
+  public void aggregateCityTrend(UserActivity activity) {
+    cityTrendAggregator.record(activity, Instant.now().getEpochSecond());
   }
 
-  private static String extractCity(JsonObject jsonObject) {
-    return jsonObject.getString("city");
-  }
-
-  private static Message<JsonObject> computeCityTrend(List<Message<JsonObject>> list) {
-    JsonObject first = list.getFirst().getPayload();
-    JsonObject last = list.getLast().getPayload();
-    String city = extractCity(first);
-    long stepsCount = last.getLong("stepsCount") - first.getLong("stepsCount");
-    JsonObject payload = new JsonObject()
-      .put("timestamp", LocalDateTime.now().toString())
-      .put("seconds", 5)
-      .put("city", city)
-      .put("stepsCount", stepsCount)
-      .put("updates", list.size());
-    Log.info("City trend computed: " + payload.encode());
-    return KafkaRecord.of(city, payload);
+  // A single timer closes the hops of all the cities, on hop boundaries
+  @Outgoing("cityTrends")
+  public Multi<Message<CityTrend>> cityTrends() {
+    long period = cityTrendHop.toMillis();
+    return Multi.createFrom().ticks()
+      .startingAfter(Duration.ofMillis(period - Math.floorMod(System.currentTimeMillis(), period)))
+      .every(cityTrendHop)
+      .onOverflow().drop()
+      .onItem().transformToIterable(tick -> cityTrendAggregator.closeHop(
+        LocalDateTime.now().toString(),
+        Instant.now().getEpochSecond()))
+      .onItem().transform(EventStatsProcessor::computeCityTrend);
   }
 
-  @PreDestroy
-  void destroy() {
-    webClient.close();
+  private static Message<CityTrend> computeCityTrend(CityTrend trend) {
+    Log.info("City trend computed: " + trend);
+    return KafkaRecord.of(trend.city(), trend);
   }
 }
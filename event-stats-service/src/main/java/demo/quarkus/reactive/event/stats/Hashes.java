@@ -0,0 +1,21 @@
+package demo.quarkus.reactive.event.stats;
+
+import java.nio.charset.StandardCharsets;
+
+final class Hashes {
+
+  private Hashes() {
+  }
+
+  // 64-bit FNV-1a, then the SplitMix64 finalizer to spread the bits
+  static long hash64(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= (b & 0xff);
+      hash *= 0x100000001b3L;
+    }
+    hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+    return hash ^ (hash >>> 31);
+  }
+}
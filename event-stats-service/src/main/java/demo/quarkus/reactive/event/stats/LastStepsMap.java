@@ -0,0 +1,136 @@
+package demo.quarkus.reactive.event.stats;
+
+import java.util.Arrays;
+
+// Last daily steps count per 64-bit key, in an open-addressing table of primitive arrays (32 bytes per entry, with no
+// boxing nor entry objects). Accessed by a single thread at a time.
+final class LastStepsMap {
+
+  private static final long FREE = 0L;
+
+  private long[] keys;
+  private long[] stepsCounts;
+  private int[] days;
+  private long[] lastSeen;
+  private int size;
+  // Next slot checked by expire
+  private int cursor;
+
+  LastStepsMap(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  // Records the steps count of a key, and returns the steps made since its former steps count. The first count of a
+  // key only sets its baseline, the first count of a day is all new steps, and older or lower counts add nothing.
+  long update(long key, int day, long stepsCount, long nowSecond) {
+    if (key == FREE) {
+      key = 1L;
+    }
+    int mask = keys.length - 1;
+    int slot = slot(key, mask);
+    while (keys[slot] != FREE) {
+      if (keys[slot] == key) {
+        lastSeen[slot] = nowSecond;
+        long delta = 0L;
+        if (day > days[slot]) {
+          delta = stepsCount;
+          days[slot] = day;
+          stepsCounts[slot] = stepsCount;
+        } else if (day == days[slot] && stepsCount > stepsCounts[slot]) {
+          delta = stepsCount - stepsCounts[slot];
+          stepsCounts[slot] = stepsCount;
+        }
+        return delta;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    stepsCounts[slot] = stepsCount;
+    days[slot] = day;
+    lastSeen[slot] = nowSecond;
+    if (++size > keys.length / 2) {
+      rehash(keys.length * 2);
+    }
+    return 0L;
+  }
+
+  // Forgets the keys not seen since the given second, in the next slots (at most maxSlots) after those of the former
+  // call, so that the cost of a call does not grow with the table. The keys are removed in place.
+  void expire(long seenBefore, int maxSlots) {
+    int mask = keys.length - 1;
+    int slots = Math.min(maxSlots, keys.length);
+    for (int i = 0; i < slots; i++) {
+      // A removal may shift another key into the slot
+      while (keys[cursor] != FREE && lastSeen[cursor] < seenBefore) {
+        remove(cursor);
+      }
+      cursor = (cursor + 1) & mask;
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  // Backward-shift deletion: the following keys of the probe sequence are moved back into the hole when their home
+  // slot allows it, so that lookups never need tombstones
+  private void remove(int slot) {
+    int mask = keys.length - 1;
+    int hole = slot;
+    int next = (slot + 1) & mask;
+    while (keys[next] != FREE) {
+      int home = slot(keys[next], mask);
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        keys[hole] = keys[next];
+        stepsCounts[hole] = stepsCounts[next];
+        days[hole] = days[next];
+        lastSeen[hole] = lastSeen[next];
+        hole = next;
+      }
+      next = (next + 1) & mask;
+    }
+    keys[hole] = FREE;
+    size--;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    long[] oldStepsCounts = stepsCounts;
+    int[] oldDays = days;
+    long[] oldLastSeen = lastSeen;
+    allocate(capacity);
+    int mask = capacity - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != FREE) {
+        int slot = slot(oldKeys[i], mask);
+        while (keys[slot] != FREE) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        stepsCounts[slot] = oldStepsCounts[i];
+        days[slot] = oldDays[i];
+        lastSeen[slot] = oldLastSeen[i];
+        size++;
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    stepsCounts = new long[capacity];
+    days = new int[capacity];
+    lastSeen = new long[capacity];
+    Arrays.fill(days, Integer.MIN_VALUE);
+    size = 0;
+    cursor = 0;
+  }
+
+  // Power of two, at most half full
+  private static int capacityFor(int expectedSize) {
+    return Math.max(16, Integer.highestOneBit(Math.max(1, expectedSize) * 4 - 1));
+  }
+
+  private static int slot(long key, int mask) {
+    return Long.hashCode(key * 0x9e3779b97f4a7c15L) & mask;
+  }
+}
@@ -0,0 +1,124 @@
+package demo.quarkus.reactive.event.stats;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import demo.quarkus.reactive.user.profile.replica.Profile;
+import demo.quarkus.reactive.user.profile.replica.ProfileReplica;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.json.JsonObject;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.ext.web.client.HttpResponse;
+import io.vertx.mutiny.ext.web.client.WebClient;
+import io.vertx.mutiny.ext.web.client.predicate.ResponsePredicate;
+import io.vertx.mutiny.ext.web.codec.BodyCodec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Profiles of the device owners, read from the local profile replica when available, otherwise fetched from
+// user-profile-service. Fetched entries are refreshed in the background once stale (the former profile is served
+// meanwhile), and expire when the device has not been seen for a while.
+@ApplicationScoped
+public class OwnerProfiles {
+
+  public record Owner(String username, String city, boolean makePublic) {
+  }
+
+  @Inject
+  Vertx vertx;
+
+  @Inject
+  MeterRegistry registry;
+
+  @Inject
+  ProfileReplica replica;
+
+  @ConfigProperty(name = "backend.user-service.host", defaultValue = "localhost")
+  String userServiceHost;
+
+  @ConfigProperty(name = "backend.user-service.port", defaultValue = "3000")
+  int userServicePort;
+
+  @ConfigProperty(name = "event-stats.owners.refresh-after", defaultValue = "1m")
+  Duration refreshAfter;
+
+  @ConfigProperty(name = "event-stats.owners.expire-after", defaultValue = "1h")
+  Duration expireAfter;
+
+  @ConfigProperty(name = "event-stats.owners.maximum-size", defaultValue = "100000")
+  long maximumSize;
+
+  // Initial delay between the (at most 3) retries of a failed request to user-profile-service
+  @ConfigProperty(name = "event-stats.owners.retry-backoff", defaultValue = "10s")
+  Duration retryBackoff;
+
+  private WebClient webClient;
+  private AsyncLoadingCache<String, Owner> owners;
+
+  @PostConstruct
+  void init() {
+    webClient = WebClient.create(vertx);
+    owners = Caffeine.newBuilder()
+      .refreshAfterWrite(refreshAfter)
+      .expireAfterAccess(expireAfter)
+      .maximumSize(maximumSize)
+      .recordStats()
+      .buildAsync((deviceId, executor) -> fetchOwner(deviceId).subscribeAsCompletionStage());
+    CaffeineCacheMetrics.monitor(registry, owners, "device-owners");
+    Gauge.builder("user.profiles.replica.size", replica, ProfileReplica::size)
+      .description("Profiles replicated from the user.profiles topic")
+      .register(registry);
+  }
+
+  // Fails once the retries are exhausted. Failed fetches are not cached, the next update of the device tries again.
+  public Uni<Owner> get(String deviceId) {
+    Optional<Profile> replicated = replica.findByDeviceId(deviceId);
+    if (replicated.isPresent()) {
+      Profile profile = replicated.get();
+      return Uni.createFrom().item(new Owner(profile.username(), profile.city(), Boolean.TRUE.equals(profile.makePublic())));
+    }
+    return Uni.createFrom().completionStage(owners.get(deviceId));
+  }
+
+  private Uni<Owner> fetchOwner(String deviceId) {
+    return fetchDeviceOwner(deviceId)
+      .onItem().transformToUni(this::fetchOwnerData)
+      .onItem().transform(data -> new Owner(
+        data.getString("username"),
+        data.getString("city"),
+        data.getBoolean("makePublic", false)));
+  }
+
+  private Uni<String> fetchDeviceOwner(String deviceId) {
+    return webClient.get(userServicePort, userServiceHost, "/owns/" + deviceId)
+      .expect(ResponsePredicate.SC_OK)
+      .expect(ResponsePredicate.JSON)
+      .as(BodyCodec.jsonObject())
+      .send()
+      .onItem().transform(resp -> resp.body().getString("username"))
+      .onFailure().retry().withBackOff(retryBackoff).atMost(3);
+  }
+
+  private Uni<JsonObject> fetchOwnerData(String username) {
+    return webClient.get(userServicePort, userServiceHost, "/" + username)
+      .expect(ResponsePredicate.SC_OK)
+      .expect(ResponsePredicate.JSON)
+      .as(BodyCodec.jsonObject())
+      .send()
+      .onItem().transform(HttpResponse::body)
+      .onFailure().retry().withBackOff(retryBackoff).atMost(3);
+  }
+
+  @PreDestroy
+  void destroy() {
+    webClient.close();
+  }
+}
@@ -0,0 +1,4 @@
+package demo.quarkus.reactive.event.stats;
+
+public record StepEvent(String deviceId, long deviceSync, int stepsCount) {
+}
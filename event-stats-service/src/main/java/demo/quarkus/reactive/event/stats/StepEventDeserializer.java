@@ -0,0 +1,10 @@
+package demo.quarkus.reactive.event.stats;
+
+import io.quarkus.kafka.client.serialization.ObjectMapperDeserializer;
+
+public class StepEventDeserializer extends ObjectMapperDeserializer<StepEvent> {
+
+  public StepEventDeserializer() {
+    super(StepEvent.class);
+  }
+}
@@ -0,0 +1,68 @@
+package demo.quarkus.reactive.event.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts events in a ring of per-second buckets, so that sliding windows (up to the ring length) are computed exactly
+// from the completed seconds, in constant memory whatever the event rate
+final class ThroughputWindows {
+
+  record Window(int seconds, long count, double throughput, long minPerSecond, long maxPerSecond, long devices) {
+  }
+
+  private static final class Bucket {
+
+    volatile long second = -1L;
+    final LongAdder count = new LongAdder();
+    final HyperLogLog devices = new HyperLogLog();
+  }
+
+  private final Bucket[] ring;
+
+  ThroughputWindows(int maxWindowSeconds) {
+    // The current second is being written while the windows before it are read, and one more bucket leaves time for
+    // late readers before a bucket gets reused
+    ring = new Bucket[maxWindowSeconds + 2];
+    for (int i = 0; i < ring.length; i++) {
+      ring[i] = new Bucket();
+    }
+  }
+
+  void record(String deviceId, long epochSecond) {
+    Bucket bucket = ring[Math.floorMod(epochSecond, ring.length)];
+    if (bucket.second != epochSecond) {
+      synchronized (bucket) {
+        if (bucket.second > epochSecond) {
+          // Older than the ring
+          return;
+        }
+        if (bucket.second < epochSecond) {
+          bucket.count.reset();
+          bucket.devices.clear();
+          bucket.second = epochSecond;
+        }
+      }
+    }
+    bucket.count.increment();
+    bucket.devices.add(deviceId);
+  }
+
+  // Window of the given number of seconds, ending before the given second
+  Window window(long endSecond, int seconds) {
+    long count = 0L;
+    long min = Long.MAX_VALUE;
+    long max = 0L;
+    HyperLogLog devices = new HyperLogLog();
+    for (long second = endSecond - seconds; second < endSecond; second++) {
+      Bucket bucket = ring[Math.floorMod(second, ring.length)];
+      long secondCount = 0L;
+      if (bucket.second == second) {
+        secondCount = bucket.count.sum();
+        devices.merge(bucket.devices);
+      }
+      count += secondCount;
+      min = Math.min(min, secondCount);
+      max = Math.max(max, secondCount);
+    }
+    return new Window(seconds, count, ((double) count) / seconds, min, max, devices.estimate());
+  }
+}
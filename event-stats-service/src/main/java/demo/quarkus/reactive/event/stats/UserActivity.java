@@ -0,0 +1,5 @@
+package demo.quarkus.reactive.event.stats;
+
+// Daily update enriched with the public data of the device owner
+public record UserActivity(String deviceId, String timestamp, long stepsCount, String username, String city, boolean makePublic) {
+}
@@ -0,0 +1,10 @@
+package demo.quarkus.reactive.event.stats;
+
+import io.quarkus.kafka.client.serialization.ObjectMapperDeserializer;
+
+public class UserActivityDeserializer extends ObjectMapperDeserializer<UserActivity> {
+
+  public UserActivityDeserializer() {
+    super(UserActivity.class);
+  }
+}
@@ -0,0 +1,89 @@
+package demo.quarkus.reactive.event.stats;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CityTrendAggregatorTest {
+
+  private static final String TODAY = "2024-05-02T10:15:30";
+  private static final String TOMORROW = "2024-05-03T00:01:00";
+
+  private static UserActivity activity(String username, String city, String timestamp, long stepsCount) {
+    return new UserActivity("device-" + username, timestamp, stepsCount, username, city, true);
+  }
+
+  @Test
+  @DisplayName("Sum the steps made by each user of a city, from their cumulative daily counts")
+  void userDeltas() {
+    CityTrendAggregator aggregator = new CityTrendAggregator(5, 5, 3600);
+    aggregator.record(activity("foo", "Lyon", TODAY, 2500), 0);
+    aggregator.record(activity("bar", "Lyon", TODAY, 100), 1);
+    aggregator.record(activity("foo", "Lyon", TODAY, 3500), 2);
+    aggregator.record(activity("bar", "Lyon", TODAY, 400), 3);
+    // Late or replayed counts add nothing
+    aggregator.record(activity("bar", "Lyon", TODAY, 300), 4);
+    aggregator.record(activity("baz", "Nantes", TODAY, 1000), 4);
+
+    List<CityTrend> trends = aggregator.closeHop(TODAY, 5);
+    assertThat(trends).containsExactlyInAnyOrder(
+      new CityTrend(TODAY, 5, "Lyon", 1000 + 300, 5),
+      new CityTrend(TODAY, 5, "Nantes", 0, 1));
+    assertThat(aggregator.users()).isEqualTo(3);
+  }
+
+  @Test
+  @DisplayName("Count the whole first count of a new day as steps")
+  void dayRollover() {
+    CityTrendAggregator aggregator = new CityTrendAggregator(5, 5, 3600);
+    aggregator.record(activity("foo", "Lyon", TODAY, 9000), 0);
+    aggregator.record(activity("foo", "Lyon", TOMORROW, 200), 1);
+    // A count of the former day arriving late is ignored
+    aggregator.record(activity("foo", "Lyon", TODAY, 9500), 2);
+
+    assertThat(aggregator.closeHop(TOMORROW, 5)).containsExactly(new CityTrend(TOMORROW, 5, "Lyon", 200, 3));
+  }
+
+  @Test
+  @DisplayName("Aggregate over hopping windows, and observe that idle cities are forgotten")
+  void hoppingWindows() {
+    CityTrendAggregator aggregator = new CityTrendAggregator(15, 5, 3600);
+    aggregator.record(activity("foo", "Lyon", TODAY, 1000), 0);
+    aggregator.record(activity("foo", "Lyon", TODAY, 1100), 1);
+    assertThat(aggregator.closeHop(TODAY, 5)).containsExactly(new CityTrend(TODAY, 15, "Lyon", 100, 2));
+
+    aggregator.record(activity("foo", "Lyon", TODAY, 1300), 6);
+    assertThat(aggregator.closeHop(TODAY, 10)).containsExactly(new CityTrend(TODAY, 15, "Lyon", 300, 3));
+    assertThat(aggregator.closeHop(TODAY, 15)).containsExactly(new CityTrend(TODAY, 15, "Lyon", 300, 3));
+    // The first hop left the window
+    assertThat(aggregator.closeHop(TODAY, 20)).containsExactly(new CityTrend(TODAY, 15, "Lyon", 200, 1));
+    assertThat(aggregator.closeHop(TODAY, 25)).isEmpty();
+    assertThat(aggregator.cities()).isZero();
+
+    // The user state outlives the city, so the next count is still a delta
+    aggregator.record(activity("foo", "Lyon", TODAY, 1350), 26);
+    assertThat(aggregator.closeHop(TODAY, 30)).containsExactly(new CityTrend(TODAY, 15, "Lyon", 50, 1));
+  }
+
+  @Test
+  @DisplayName("Forget idle users")
+  void userExpiry() {
+    CityTrendAggregator aggregator = new CityTrendAggregator(5, 5, 60);
+    for (int i = 0; i < 1000; i++) {
+      aggregator.record(activity("user-" + i, "Lyon", TODAY, 10), i < 500 ? 0 : 50);
+    }
+    assertThat(aggregator.users()).isEqualTo(1000);
+    aggregator.closeHop(TODAY, 55);
+    assertThat(aggregator.users()).isEqualTo(1000);
+    aggregator.closeHop(TODAY, 100);
+    assertThat(aggregator.users()).isEqualTo(500);
+
+    // An expired user starts again from a baseline
+    aggregator.record(activity("user-0", "Lyon", TODAY, 20), 101);
+    aggregator.record(activity("user-999", "Lyon", TODAY, 20), 101);
+    assertThat(aggregator.closeHop(TODAY, 105)).containsExactly(new CityTrend(TODAY, 5, "Lyon", 10, 2));
+  }
+}
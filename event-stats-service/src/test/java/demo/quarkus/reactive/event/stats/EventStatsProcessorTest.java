@@ -7,11 +7,13 @@ import io.quarkus.test.kafka.InjectKafkaCompanion;
 import io.quarkus.test.kafka.KafkaCompanionResource;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.vertx.core.AbstractVerticle;
+import io.smallrye.reactive.messaging.kafka.companion.ConsumerTask;
 import io.smallrye.reactive.messaging.kafka.companion.KafkaCompanion;
 import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.core.Vertx;
 import io.vertx.mutiny.ext.web.Router;
 import io.vertx.mutiny.ext.web.RoutingContext;
+import io.vertx.mutiny.ext.web.client.WebClient;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.junit.jupiter.api.AfterEach;
@@ -19,11 +21,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
 import static org.assertj.core.data.Offset.offset;
 
 @QuarkusTest
@@ -60,14 +65,28 @@ class EventStatsProcessorTest {
     for (int i = 0; i < 10; i++) {
       companion.produce(JsonObject.class).fromRecords(List.of(incomingStepsRecord("abc", (long) i, 10)));
     }
-    List<ConsumerRecord<String, JsonObject>> records = companion.consume(JsonObject.class)
-      .fromTopics("event-stats.throughput", 1)
-      .awaitCompletion()
-      .getRecords();
-    JsonObject data = records.getFirst().value();
-    assertThat(data.getInteger("seconds")).isEqualTo(5);
-    assertThat(data.getInteger("count")).isEqualTo(10);
-    assertThat(data.getDouble("throughput")).isCloseTo(2.0d, offset(0.01d));
+    // Updates cover consecutive 5 seconds windows, and the events may be spread over two of them
+    List<ConsumerRecord<String, JsonObject>> records;
+    try (ConsumerTask<String, JsonObject> task = companion.consume(JsonObject.class).fromTopics("event-stats.throughput")) {
+      await().atMost(Duration.ofSeconds(30)).until(() -> totalCount(task.getRecords()) >= 10);
+      records = task.getRecords();
+    }
+    assertThat(totalCount(records)).isEqualTo(10);
+    for (ConsumerRecord<String, JsonObject> record : records) {
+      JsonObject data = record.value();
+      assertThat(data.getInteger("seconds")).isEqualTo(5);
+      assertThat(data.getDouble("throughput")).isCloseTo(data.getInteger("count") / 5.0d, offset(0.01d));
+    }
+    JsonObject last = records.getLast().value();
+    JsonObject fiveMinutes = last.getJsonArray("windows").getJsonObject(2);
+    assertThat(fiveMinutes.getInteger("seconds")).isEqualTo(300);
+    assertThat(fiveMinutes.getLong("count")).isGreaterThanOrEqualTo(10L);
+    assertThat(fiveMinutes.getLong("devices")).isGreaterThanOrEqualTo(1L);
+    assertThat(fiveMinutes.getLong("maxPerSecond")).isGreaterThanOrEqualTo(fiveMinutes.getLong("minPerSecond"));
+  }
+
+  private static int totalCount(List<ConsumerRecord<String, JsonObject>> records) {
+    return records.stream().mapToInt(record -> record.value().getInteger("count")).sum();
   }
 
   private ProducerRecord<String, JsonObject> incomingStepsRecord(String deviceId, long syncId, long steps) {
@@ -108,21 +127,110 @@ class EventStatsProcessorTest {
   }
 
   @Test
-  @DisplayName("City trend updates")
-  void cityTrendUpdate() {
+  @DisplayName("User activity updates of the same device, and observe that the owner profile is fetched once")
+  void userActivityCachedOwner() {
+    int before = MockUserProfileServer.ownsRequests.get();
     companion.produce(JsonObject.class).fromRecords(List.of(
-      dailyStepsUpdateRecord("abc", 2500),
-      dailyStepsUpdateRecord("abc", 3500)
+      dailyStepsUpdateRecord("cached", 1000),
+      dailyStepsUpdateRecord("cached", 2000),
+      dailyStepsUpdateRecord("cached", 3000)
     ));
     List<ConsumerRecord<String, JsonObject>> records = companion.consume(JsonObject.class)
-      .fromTopics("event-stats.city-trend.updates", 1)
+      .fromTopics("event-stats.user-activity.updates", 3)
       .awaitCompletion()
       .getRecords();
-    JsonObject data = records.getFirst().value();
-    assertThat(data.getInteger("seconds")).isEqualTo(5);
-    assertThat(data.getInteger("updates")).isEqualTo(2);
-    assertThat(data.getLong("stepsCount")).isEqualTo(1000L);
-    assertThat(data.getString("city")).isEqualTo("Lyon");
+    assertThat(records).extracting(record -> record.value().getLong("stepsCount")).containsExactly(1000L, 2000L, 3000L);
+    assertThat(records).extracting(record -> record.value().getString("username")).containsOnly("Foo");
+    assertThat(MockUserProfileServer.ownsRequests.get() - before).isEqualTo(1);
+
+    WebClient webClient = WebClient.create(vertx);
+    String metrics = webClient.get(3121, "localhost", "/q/metrics")
+      .send()
+      .await().indefinitely()
+      .bodyAsString();
+    webClient.close();
+    assertThat(metrics).contains("cache_gets_total{cache=\"device-owners\",result=\"hit\"}");
+    assertThat(metrics).contains("event_stats_enrichment_seconds_count");
+  }
+
+  @Test
+  @DisplayName("User activity updates of a device with a replicated profile, and observe that the replica is used")
+  void userActivityReplicatedOwner() {
+    // The Kafka topics outlive the test, hence a device id of its own
+    String deviceId = "replicated-" + System.nanoTime();
+    companion.produce(JsonObject.class).fromRecords(List.of(new ProducerRecord<>("user.profiles", deviceId, new JsonObject()
+      .put("username", "Bar")
+      .put("email", "bar@mail.tld")
+      .put("deviceId", deviceId)
+      .put("city", "Nantes")
+      .put("makePublic", false))));
+
+    // Updates read before the replica caught up are enriched from user-profile-service
+    AtomicInteger updates = new AtomicInteger();
+    await().atMost(Duration.ofSeconds(30)).until(() -> {
+      companion.produce(JsonObject.class).fromRecords(List.of(dailyStepsUpdateRecord(deviceId, 1000)));
+      int count = updates.incrementAndGet();
+      JsonObject data = companion.consume(JsonObject.class)
+        .fromTopics("event-stats.user-activity.updates", stream -> stream
+          .select().where(record -> deviceId.equals(record.value().getString("deviceId")))
+          .select().first(count))
+        .awaitCompletion()
+        .getLastRecord()
+        .value();
+      return "Bar".equals(data.getString("username")) && "Nantes".equals(data.getString("city"));
+    });
+  }
+
+  @Test
+  @DisplayName("User activity updates after a failed owner lookup, and observe that the next updates are still enriched")
+  void userActivityUnknownOwner() {
+    // The Kafka topics outlive the test, hence device ids of its own
+    String unknownDeviceId = "unknown-" + System.nanoTime();
+    String deviceId = "known-" + System.nanoTime();
+    int before = MockUserProfileServer.unknownRequests.get();
+    companion.produce(JsonObject.class).fromRecords(List.of(dailyStepsUpdateRecord(unknownDeviceId, 1000)));
+    // The first request and its 3 retries (with the default backoff in packaged mode)
+    await().atMost(Duration.ofMinutes(3)).until(() -> MockUserProfileServer.unknownRequests.get() - before == 4);
+
+    companion.produce(JsonObject.class).fromRecords(List.of(dailyStepsUpdateRecord(deviceId, 2000)));
+    JsonObject data = companion.consume(JsonObject.class)
+      .fromTopics("event-stats.user-activity.updates", stream -> stream
+        .select().where(record -> deviceId.equals(record.value().getString("deviceId"))
+          || unknownDeviceId.equals(record.value().getString("deviceId")))
+        .select().first(1))
+      .awaitCompletion(Duration.ofMinutes(1))
+      .getFirstRecord()
+      .value();
+    assertThat(data.getString("deviceId")).isEqualTo(deviceId);
+    assertThat(data.getLong("stepsCount")).isEqualTo(2000L);
+  }
+
+  @Test
+  @DisplayName("City trend updates, as the steps made by the users of a city")
+  void cityTrendUpdate() {
+    // The Kafka topics outlive the test, hence a user (and city) of its own
+    String deviceId = "trend-" + System.nanoTime();
+    companion.produce(JsonObject.class).fromRecords(List.of(
+      dailyStepsUpdateRecord(deviceId, 2500),
+      dailyStepsUpdateRecord(deviceId, 3500)
+    ));
+    // The first update sets the baseline of the user, and the updates may be spread over two windows
+    List<JsonObject> trends;
+    try (ConsumerTask<String, JsonObject> task = companion.consume(JsonObject.class).fromTopics("event-stats.city-trend.updates")) {
+      await().atMost(Duration.ofSeconds(30)).until(() -> cityTrends(task.getRecords(), deviceId).stream()
+        .mapToInt(data -> data.getInteger("updates")).sum() >= 2);
+      trends = cityTrends(task.getRecords(), deviceId);
+    }
+    assertThat(trends).allMatch(data -> data.getInteger("seconds") == 5);
+    assertThat(trends.stream().mapToInt(data -> data.getInteger("updates")).sum()).isEqualTo(2);
+    assertThat(trends.stream().mapToLong(data -> data.getLong("stepsCount")).sum()).isEqualTo(1000L);
+  }
+
+  private static List<JsonObject> cityTrends(List<ConsumerRecord<String, JsonObject>> records, String city) {
+    return records.stream()
+      .map(ConsumerRecord::value)
+      .filter(data -> city.equals(data.getString("city")))
+      .toList();
   }
 
   @AfterEach
@@ -132,6 +240,9 @@ class EventStatsProcessorTest {
 
   private static class MockUserProfileServer extends AbstractVerticle {
 
+    static final AtomicInteger ownsRequests = new AtomicInteger();
+    static final AtomicInteger unknownRequests = new AtomicInteger();
+
     private String deviceId;
 
     @Override
@@ -146,21 +257,33 @@ class EventStatsProcessorTest {
     }
 
     private void owns(RoutingContext rc) {
+      ownsRequests.incrementAndGet();
       deviceId = rc.pathParam("deviceId");
+      if (deviceId.startsWith("unknown-")) {
+        unknownRequests.incrementAndGet();
+        rc.response().setStatusCode(404).endAndForget();
+        return;
+      }
       JsonObject notAllData = new JsonObject()
-        .put("username", "Foo")
+        .put("username", username(deviceId))
         .put("deviceId", deviceId);
       rc.response()
         .putHeader("Content-Type", "application/json")
         .endAndForget(notAllData.encode());
     }
 
+    // Trend devices belong to users of their own, living in cities of their own
+    private static String username(String deviceId) {
+      return deviceId.startsWith("trend-") ? deviceId : "Foo";
+    }
+
     private void username(RoutingContext rc) {
+      String username = rc.pathParam("username");
       JsonObject notAllData = new JsonObject()
-        .put("username", "Foo")
+        .put("username", username)
         .put("email", "foo@mail.tld")
         .put("deviceId", deviceId)
-        .put("city", "Lyon")
+        .put("city", username.startsWith("trend-") ? username : "Lyon")
         .put("makePublic", true);
       rc.response()
         .putHeader("Content-Type", "application/json")
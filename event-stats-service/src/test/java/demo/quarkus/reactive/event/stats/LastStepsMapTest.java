@@ -0,0 +1,33 @@
+package demo.quarkus.reactive.event.stats;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LastStepsMapTest {
+
+  @Test
+  @DisplayName("Expire keys slice by slice, and observe that the remaining keys are still found")
+  void expireInSlices() {
+    LastStepsMap map = new LastStepsMap(16);
+    for (long key = 1; key <= 10_000; key++) {
+      map.update(key, 1, 100, key % 2 == 0 ? 0 : 50);
+    }
+    assertThat(map.size()).isEqualTo(10_000);
+
+    // A call only sweeps its slice of the table
+    map.expire(10, 64);
+    assertThat(map.size()).isGreaterThan(9_000);
+    for (int i = 0; i < 1_000; i++) {
+      map.expire(10, 64);
+    }
+    assertThat(map.size()).isEqualTo(5_000);
+
+    for (long key = 1; key <= 10_000; key++) {
+      // Remaining keys give a delta from their last count, expired ones start again from a baseline
+      assertThat(map.update(key, 1, 150, 60)).as("key %d", key).isEqualTo(key % 2 == 0 ? 0L : 50L);
+    }
+    assertThat(map.size()).isEqualTo(10_000);
+  }
+}
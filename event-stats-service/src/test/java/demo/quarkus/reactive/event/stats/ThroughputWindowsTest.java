@@ -0,0 +1,70 @@
+package demo.quarkus.reactive.event.stats;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Offset.offset;
+import static org.assertj.core.data.Percentage.withPercentage;
+
+class ThroughputWindowsTest {
+
+  @Test
+  @DisplayName("Count events in sliding windows, with the per-second min and max and the number of devices")
+  void slidingWindows() {
+    ThroughputWindows windows = new ThroughputWindows(60);
+    long start = 1_000_000L;
+    for (int second = 0; second < 10; second++) {
+      for (int i = 0; i <= second; i++) {
+        windows.record("device-" + i, start + second);
+      }
+    }
+
+    ThroughputWindows.Window last5 = windows.window(start + 10, 5);
+    assertThat(last5.count()).isEqualTo(6 + 7 + 8 + 9 + 10);
+    assertThat(last5.throughput()).isCloseTo(8.0d, offset(0.01d));
+    assertThat(last5.minPerSecond()).isEqualTo(6L);
+    assertThat(last5.maxPerSecond()).isEqualTo(10L);
+    assertThat(last5.devices()).isEqualTo(10L);
+
+    // Seconds without events count as zero
+    ThroughputWindows.Window last60 = windows.window(start + 10, 60);
+    assertThat(last60.count()).isEqualTo(55L);
+    assertThat(last60.minPerSecond()).isZero();
+    assertThat(last60.maxPerSecond()).isEqualTo(10L);
+  }
+
+  @Test
+  @DisplayName("Reuse the buckets of the ring, and observe that older seconds are forgotten")
+  void ringReuse() {
+    ThroughputWindows windows = new ThroughputWindows(5);
+    windows.record("a", 100L);
+    windows.record("b", 107L);
+    // Older than the ring
+    windows.record("c", 100L);
+
+    assertThat(windows.window(101L, 1).count()).isZero();
+    assertThat(windows.window(108L, 5).count()).isEqualTo(1L);
+    assertThat(windows.window(108L, 5).devices()).isEqualTo(1L);
+  }
+
+  @Test
+  @DisplayName("Estimate the number of distinct devices")
+  void cardinality() {
+    HyperLogLog small = new HyperLogLog();
+    for (int i = 0; i < 100; i++) {
+      small.add("device-" + (i % 20));
+    }
+    assertThat(small.estimate()).isEqualTo(20L);
+
+    HyperLogLog large = new HyperLogLog();
+    HyperLogLog other = new HyperLogLog();
+    for (int i = 0; i < 100_000; i++) {
+      large.add("device-" + i);
+      other.add("device-" + (i + 50_000));
+    }
+    assertThat(large.estimate()).isCloseTo(100_000L, withPercentage(10));
+    large.merge(other);
+    assertThat(large.estimate()).isCloseTo(150_000L, withPercentage(10));
+  }
+}
@@ -1,22 +1,38 @@
 package demo.quarkus.reactive.ingestion;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import io.quarkus.logging.Log;
+import io.smallrye.common.annotation.Blocking;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
-import io.smallrye.reactive.messaging.MutinyEmitter;
-import io.smallrye.reactive.messaging.kafka.KafkaRecord;
-import io.smallrye.reactive.messaging.kafka.OutgoingKafkaRecord;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import jakarta.annotation.PostConstruct;
 import jakarta.inject.Inject;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
-import org.eclipse.microprofile.reactive.messaging.Channel;
-import org.eclipse.microprofile.reactive.messaging.OnOverflow;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 import org.jboss.resteasy.reactive.RestResponse;
+import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.server.ServerExceptionMapper;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
 
-import static org.eclipse.microprofile.reactive.messaging.OnOverflow.Strategy.FAIL;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Path("ingest")
 public class IngestResource {
@@ -25,16 +41,110 @@ public class IngestResource {
   Logger logger;
 
   @Inject
-  @Channel("steps")
-  @OnOverflow(FAIL)
-  MutinyEmitter<Payload> stepsEmitter;
+  StepsPublisher stepsPublisher;
+
+  @Inject
+  Validator validator;
+
+  @Inject
+  ObjectMapper objectMapper;
+
+  // Maximum number of events of a batch waiting for a Kafka acknowledgement (see also ingestion.max-in-flight)
+  @ConfigProperty(name = "ingestion.batch.max-in-flight", defaultValue = "128")
+  int maxInFlight;
+
+  private ObjectReader stepEventReader;
+
+  @PostConstruct
+  void init() {
+    stepEventReader = objectMapper.readerFor(StepEvent.class);
+  }
 
   @POST
   @Consumes(MediaType.APPLICATION_JSON)
-  public Uni<RestResponse<Void>> httpIngest(@Valid Payload payload) {
-    Log.info("Ingesting payload: " + payload);
+  public Uni<RestResponse<Void>> httpIngest(@Valid StepEvent event) {
+    Log.info("Ingesting step event: " + event);
+
+    return stepsPublisher.publish(event).replaceWith(RestResponse.ok());
+  }
+
+  // Binary frames (see StepEventFrame) are decoded and validated without Jackson nor Bean Validation
+  @POST
+  @Consumes(StepEventFrame.MEDIA_TYPE)
+  public Uni<RestResponse<Void>> frameIngest(byte[] frame) {
+    StepEvent event = StepEventFrame.decode(frame);
+    Log.info("Ingesting step event frame: " + event);
+
+    return stepsPublisher.publish(event).replaceWith(RestResponse.ok());
+  }
+
+  // Accepts a JSON array or a NDJSON stream of step events, and responds with one result per event (in completion
+  // order, hence the index) as the events are read, validated and published. Blocking methods get the body as it
+  // arrives rather than fully buffered.
+  @Path("batch")
+  @POST
+  @Blocking
+  @Consumes({MediaType.APPLICATION_JSON, RestMediaType.APPLICATION_NDJSON})
+  @Produces(RestMediaType.APPLICATION_NDJSON)
+  @RestStreamElementType(MediaType.APPLICATION_JSON)
+  public Multi<JsonObject> batchIngest(InputStream body) {
+    Log.info("Ingesting a batch of step events");
+
+    AtomicLong index = new AtomicLong();
+    return Multi.createFrom().<StepEvent>iterable(() -> readEvents(body))
+      // The body is read lazily with blocking reads, only as fast as events get published
+      .runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
+      .onItem().transform(event -> new BatchItem(index.getAndIncrement(), event, null))
+      // Malformed input ends the batch, after the results of the events read so far
+      .onFailure().recoverWithItem(err -> new BatchItem(index.get(), null, "Malformed input: " + err.getMessage()))
+      .onItem().transformToUni(this::ingest).merge(maxInFlight);
+  }
+
+  private record BatchItem(long index, StepEvent event, String error) {
+  }
+
+  private MappingIterator<StepEvent> readEvents(InputStream body) {
+    try {
+      // Both a root-level array and a sequence of root-level values are read one element at a time
+      return stepEventReader.readValues(body);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Uni<JsonObject> ingest(BatchItem item) {
+    JsonObject result = new JsonObject().put("index", item.index());
+    if (item.event() == null) {
+      String error = (item.error() != null) ? item.error() : "Missing step event";
+      return Uni.createFrom().item(result.put("status", 400).put("errors", new JsonArray().add(error)));
+    }
+    StepEvent event = item.event();
+    Set<ConstraintViolation<StepEvent>> violations = validator.validate(event);
+    if (!violations.isEmpty()) {
+      JsonArray errors = new JsonArray();
+      for (ConstraintViolation<StepEvent> violation : violations) {
+        errors.add(violation.getPropertyPath() + " " + violation.getMessage());
+      }
+      return Uni.createFrom().item(result.put("status", 400).put("errors", errors));
+    }
+    return stepsPublisher.publish(event)
+      .onItem().transform(v -> result.put("status", 200))
+      .onFailure().recoverWithItem(err -> result
+        .put("status", (err instanceof IngestionOverloadedException) ? 429 : 503)
+        .put("errors", new JsonArray().add(String.valueOf(err.getMessage()))));
+  }
+
+  @ServerExceptionMapper
+  public RestResponse<String> invalidInput(IllegalArgumentException e) {
+    return RestResponse.status(RestResponse.Status.BAD_REQUEST, e.getMessage());
+  }
 
-    OutgoingKafkaRecord<String, Payload> record = KafkaRecord.of(payload.deviceId, payload);
-    return stepsEmitter.sendMessage(record).replaceWith(RestResponse.ok());
+  @ServerExceptionMapper
+  public RestResponse<String> overloaded(IngestionOverloadedException e) {
+    // Retry-After is expressed in seconds, rounded up
+    long seconds = Math.max(1L, (e.retryAfter().toMillis() + 999L) / 1000L);
+    return RestResponse.ResponseBuilder.<String>create(RestResponse.Status.TOO_MANY_REQUESTS, e.getMessage())
+      .header(HttpHeaders.RETRY_AFTER, seconds)
+      .build();
   }
 }
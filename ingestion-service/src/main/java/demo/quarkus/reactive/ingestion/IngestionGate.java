@@ -0,0 +1,89 @@
+package demo.quarkus.reactive.ingestion;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Tracks the step events sent to Kafka and not acknowledged yet, and sheds load past a threshold
+@ApplicationScoped
+public class IngestionGate {
+
+  @Inject
+  MeterRegistry registry;
+
+  @ConfigProperty(name = "ingestion.max-in-flight", defaultValue = "1000")
+  int maxInFlight;
+
+  // Latency budget for a Kafka acknowledgement
+  @ConfigProperty(name = "ingestion.ack-timeout", defaultValue = "2s")
+  Duration ackTimeout;
+
+  // Hint sent to rejected clients
+  @ConfigProperty(name = "ingestion.retry-after", defaultValue = "1s")
+  Duration retryAfter;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private Counter accepted;
+  private Counter overloaded;
+  private Counter timedOut;
+  private Counter failed;
+
+  @PostConstruct
+  void init() {
+    Gauge.builder("ingestion.steps.in.flight", inFlight, AtomicInteger::get)
+      .description("Step events waiting for a Kafka acknowledgement")
+      .register(registry);
+    accepted = Counter.builder("ingestion.steps.accepted")
+      .register(registry);
+    overloaded = Counter.builder("ingestion.steps.rejected")
+      .tag("reason", "overloaded")
+      .register(registry);
+    timedOut = Counter.builder("ingestion.steps.rejected")
+      .tag("reason", "ack-timeout")
+      .register(registry);
+    failed = Counter.builder("ingestion.steps.failed")
+      .description("Step events accepted without waiting for Kafka, and then not written")
+      .register(registry);
+  }
+
+  boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= maxInFlight) {
+        overloaded.increment();
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        accepted.increment();
+        return true;
+      }
+    }
+  }
+
+  void release() {
+    inFlight.decrementAndGet();
+  }
+
+  void ackTimedOut() {
+    timedOut.increment();
+  }
+
+  void sendFailed() {
+    failed.increment();
+  }
+
+  Duration ackTimeout() {
+    return ackTimeout;
+  }
+
+  Duration retryAfter() {
+    return retryAfter;
+  }
+}
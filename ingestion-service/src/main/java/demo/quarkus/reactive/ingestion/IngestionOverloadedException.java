@@ -0,0 +1,18 @@
+package demo.quarkus.reactive.ingestion;
+
+import java.time.Duration;
+
+// Step events cannot be accepted for now, the client should retry later
+public class IngestionOverloadedException extends RuntimeException {
+
+  private final Duration retryAfter;
+
+  public IngestionOverloadedException(String message, Duration retryAfter) {
+    super(message, null, false, false);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration retryAfter() {
+    return retryAfter;
+  }
+}
@@ -0,0 +1,18 @@
+package demo.quarkus.reactive.ingestion;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+
+public record StepEvent(
+
+  @NotBlank
+  String deviceId,
+
+  @NotNull
+  Long deviceSync,
+
+  @NotNull
+  @PositiveOrZero
+  Integer stepsCount) {
+}
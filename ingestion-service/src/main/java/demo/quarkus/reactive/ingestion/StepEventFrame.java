@@ -0,0 +1,72 @@
+package demo.quarkus.reactive.ingestion;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Compact binary encoding of a step event for constrained devices, big-endian:
+//
+//   version (1 byte, currently 1)
+//   deviceId length in bytes (1 byte, 1 to 255)
+//   deviceId (UTF-8)
+//   deviceSync (8 bytes)
+//   stepsCount (4 bytes)
+//
+// A typical event takes 14 bytes plus its device identifier, against about 70 bytes of JSON, and is decoded without
+// any intermediate tree nor reflection. Decoding enforces the same rules as the StepEvent constraints.
+public final class StepEventFrame {
+
+  public static final String MEDIA_TYPE = "application/vnd.steps.frame";
+
+  public static final byte VERSION = 1;
+
+  private static final int FIXED_LENGTH = 1 + 1 + Long.BYTES + Integer.BYTES;
+
+  private StepEventFrame() {
+  }
+
+  public static byte[] encode(StepEvent event) {
+    byte[] deviceId = event.deviceId().getBytes(StandardCharsets.UTF_8);
+    if (deviceId.length == 0 || deviceId.length > 255) {
+      throw new IllegalArgumentException("deviceId must be 1 to 255 bytes long");
+    }
+    return ByteBuffer.allocate(FIXED_LENGTH + deviceId.length)
+      .put(VERSION)
+      .put((byte) deviceId.length)
+      .put(deviceId)
+      .putLong(event.deviceSync())
+      .putInt(event.stepsCount())
+      .array();
+  }
+
+  public static StepEvent decode(byte[] frame) {
+    return decode(ByteBuffer.wrap(frame));
+  }
+
+  // Reads exactly one frame, from the buffer position to its limit
+  public static StepEvent decode(ByteBuffer frame) {
+    try {
+      byte version = frame.get();
+      if (version != VERSION) {
+        throw new IllegalArgumentException("Unsupported frame version " + version);
+      }
+      int deviceIdLength = Byte.toUnsignedInt(frame.get());
+      if (frame.remaining() != deviceIdLength + Long.BYTES + Integer.BYTES) {
+        throw new IllegalArgumentException("Frame length does not match its deviceId length");
+      }
+      String deviceId = new String(frame.array(), frame.arrayOffset() + frame.position(), deviceIdLength, StandardCharsets.UTF_8);
+      frame.position(frame.position() + deviceIdLength);
+      long deviceSync = frame.getLong();
+      int stepsCount = frame.getInt();
+      if (deviceId.isBlank()) {
+        throw new IllegalArgumentException("deviceId must not be blank");
+      }
+      if (stepsCount < 0) {
+        throw new IllegalArgumentException("stepsCount must be greater than or equal to 0");
+      }
+      return new StepEvent(deviceId, deviceSync, stepsCount);
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated frame", e);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package demo.quarkus.reactive.ingestion;
+
+import io.quarkus.logging.Log;
+import io.smallrye.mutiny.TimeoutException;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.reactive.messaging.MutinyEmitter;
+import io.smallrye.reactive.messaging.kafka.KafkaRecord;
+import io.smallrye.reactive.messaging.kafka.OutgoingKafkaRecord;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.reactive.messaging.Channel;
+import org.eclipse.microprofile.reactive.messaging.OnOverflow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.eclipse.microprofile.reactive.messaging.OnOverflow.Strategy.BUFFER;
+
+// Publishes the step events to Kafka, whatever the ingestion endpoint
+@ApplicationScoped
+public class StepsPublisher {
+
+  // The gate rejects events well before this buffer fills up, as long as ingestion.max-in-flight stays below its size
+  @Inject
+  @Channel("steps")
+  @OnOverflow(value = BUFFER, bufferSize = 4096)
+  MutinyEmitter<StepEvent> stepsEmitter;
+
+  @Inject
+  IngestionGate gate;
+
+  @Inject
+  SyncDeduplicator deduplicator;
+
+  // When false, events are acknowledged to clients once handed to the Kafka producer, and the broker
+  // acknowledgement is only tracked (in-flight count and failures), trading delivery guarantees for latency
+  @ConfigProperty(name = "ingestion.await-ack", defaultValue = "true")
+  boolean awaitAck;
+
+  // Completes once Kafka has acknowledged the record (or right away, see ingestion.await-ack), keyed by device so that
+  // the events of a device stay in order. Fails with IngestionOverloadedException when too many events are in flight,
+  // or when the acknowledgement takes longer than the latency budget (the record may still be written, and duplicates
+  // are dropped downstream). Recently published events complete right away, without being published again.
+  public Uni<Void> publish(StepEvent event) {
+    if (deduplicator.isDuplicate(event)) {
+      return Uni.createFrom().voidItem();
+    }
+    if (!gate.tryAcquire()) {
+      return Uni.createFrom().failure(new IngestionOverloadedException("Too many step events in flight", gate.retryAfter()));
+    }
+    // Released once Kafka is done with the record, even when the caller gave up waiting
+    AtomicBoolean released = new AtomicBoolean();
+    Runnable release = () -> {
+      if (released.compareAndSet(false, true)) {
+        gate.release();
+      }
+    };
+    OutgoingKafkaRecord<String, StepEvent> record = KafkaRecord.of(event.deviceId(), event)
+      .withAck(() -> {
+        deduplicator.published(event);
+        release.run();
+        return CompletableFuture.completedFuture(null);
+      })
+      .withNack(err -> {
+        release.run();
+        return CompletableFuture.completedFuture(null);
+      });
+    Uni<Void> sent = stepsEmitter.sendMessage(record)
+      .onFailure().invoke(release);
+    if (!awaitAck) {
+      sent.subscribe().with(
+        ignored -> {
+        },
+        err -> {
+          gate.sendFailed();
+          Log.warn("Failed to publish step event: " + event, err);
+        });
+      return Uni.createFrom().voidItem();
+    }
+    return sent
+      .ifNoItem().after(gate.ackTimeout()).fail()
+      .onFailure(TimeoutException.class).transform(err -> {
+        gate.ackTimedOut();
+        return new IngestionOverloadedException("Kafka acknowledgement timed out", gate.retryAfter());
+      });
+  }
+}
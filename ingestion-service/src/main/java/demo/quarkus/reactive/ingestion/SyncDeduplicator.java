@@ -0,0 +1,70 @@
+package demo.quarkus.reactive.ingestion;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.quarkus.runtime.configuration.MemorySize;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+
+// Remembers the device syncs recently written to Kafka, so that upload retries are answered without being published
+// again. Entries expire after a while and the least recently used ones are evicted past a memory budget: older
+// duplicates still get filtered out by activity-service.
+@ApplicationScoped
+public class SyncDeduplicator {
+
+  // Approximate size of an entry, besides its device identifier (cache node, key record, string header)
+  private static final int ENTRY_OVERHEAD = 128;
+
+  @Inject
+  MeterRegistry registry;
+
+  @ConfigProperty(name = "ingestion.dedup.enabled", defaultValue = "true")
+  boolean enabled;
+
+  @ConfigProperty(name = "ingestion.dedup.ttl", defaultValue = "10m")
+  Duration ttl;
+
+  @ConfigProperty(name = "ingestion.dedup.max-memory", defaultValue = "16M")
+  MemorySize maxMemory;
+
+  private record Sync(String deviceId, long deviceSync) {
+  }
+
+  private Cache<Sync, Boolean> published;
+
+  @PostConstruct
+  void init() {
+    published = Caffeine.newBuilder()
+      .expireAfterWrite(ttl)
+      .maximumWeight(maxMemory.asLongValue())
+      .<Sync, Boolean>weigher((sync, value) -> ENTRY_OVERHEAD + sync.deviceId().length())
+      .recordStats()
+      .build();
+    // Hits are the duplicates being filtered out
+    CaffeineCacheMetrics.monitor(registry, published, "device-syncs");
+    Gauge.builder("ingestion.dedup.memory", published, cache -> cache.policy().eviction()
+        .flatMap(eviction -> eviction.weightedSize().stream().boxed().findFirst())
+        .orElse(0L))
+      .description("Approximate memory used by the remembered device syncs")
+      .baseUnit("bytes")
+      .register(registry);
+  }
+
+  boolean isDuplicate(StepEvent event) {
+    return enabled && published.getIfPresent(new Sync(event.deviceId(), event.deviceSync())) != null;
+  }
+
+  // Only acknowledged events are remembered, failed ones have to be retried
+  void published(StepEvent event) {
+    if (enabled) {
+      published.put(new Sync(event.deviceId(), event.deviceSync()), Boolean.TRUE);
+    }
+  }
+}
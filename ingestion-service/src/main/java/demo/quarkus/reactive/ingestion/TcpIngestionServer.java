@@ -0,0 +1,144 @@
+package demo.quarkus.reactive.ingestion;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.mutiny.core.Context;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.core.net.NetServer;
+import io.vertx.mutiny.core.net.NetSocket;
+import io.vertx.mutiny.core.parsetools.RecordParser;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.nio.ByteBuffer;
+
+// Ingestion over persistent TCP connections, for devices and gateways syncing many events.
+//
+// Clients pipeline length-prefixed frames: length (4 bytes), then a client-chosen sequence number (8 bytes) and a
+// step event frame (see StepEventFrame). Every frame gets an acknowledgement, in completion order: the sequence number
+// (8 bytes) and a status byte (see the constants below). Frames are published like HTTP ingested events, and the
+// events of a connection are sent to Kafka in the order they have been read.
+@ApplicationScoped
+public class TcpIngestionServer {
+
+  // Acknowledgement statuses, the TCP counterparts of the 200, 400, 429 and 503 HTTP responses
+  public static final byte OK = 0;
+  public static final byte INVALID = 1;
+  public static final byte OVERLOADED = 2;
+  public static final byte FAILED = 3;
+
+  public static final int ACK_LENGTH = Long.BYTES + 1;
+
+  private static final int MAX_FRAME_LENGTH = Long.BYTES + 2 + 255 + Long.BYTES + Integer.BYTES;
+
+  @Inject
+  Vertx vertx;
+
+  @Inject
+  StepsPublisher stepsPublisher;
+
+  @ConfigProperty(name = "ingestion.tcp.enabled", defaultValue = "true")
+  boolean enabled;
+
+  @ConfigProperty(name = "ingestion.tcp.port", defaultValue = "3012")
+  int port;
+
+  // The connection stops being read past this number of unacknowledged frames
+  @ConfigProperty(name = "ingestion.tcp.max-in-flight", defaultValue = "64")
+  int maxInFlight;
+
+  private NetServer server;
+
+  void start(@Observes StartupEvent ev) {
+    if (!enabled) {
+      return;
+    }
+    server = vertx.createNetServer()
+      .connectHandler(socket -> new Connection(socket).start())
+      .listenAndAwait(port);
+    Log.info("TCP ingestion listening on port " + server.actualPort());
+  }
+
+  void stop(@Observes ShutdownEvent ev) {
+    if (server != null) {
+      server.closeAndAwait();
+    }
+  }
+
+  private class Connection {
+
+    private final NetSocket socket;
+    private final Context context;
+    private final RecordParser parser;
+
+    // Only accessed from the connection event loop
+    private boolean readingLength = true;
+    private int inFlight;
+
+    Connection(NetSocket socket) {
+      this.socket = socket;
+      this.context = vertx.getOrCreateContext();
+      this.parser = RecordParser.newFixed(Integer.BYTES, socket);
+    }
+
+    void start() {
+      Log.info("TCP ingestion connection from " + socket.remoteAddress());
+      parser.exceptionHandler(err -> {
+        Log.warn("TCP ingestion connection failure from " + socket.remoteAddress(), err);
+        socket.closeAndForget();
+      });
+      parser.endHandler(() -> Log.info("TCP ingestion connection closed by " + socket.remoteAddress()));
+      parser.handler(this::record);
+    }
+
+    private void record(Buffer buffer) {
+      if (readingLength) {
+        int length = buffer.getInt(0);
+        if (length <= Long.BYTES || length > MAX_FRAME_LENGTH) {
+          // The stream cannot be resynchronized
+          Log.warn("Closing TCP ingestion connection from " + socket.remoteAddress() + ": invalid frame length " + length);
+          socket.closeAndForget();
+          return;
+        }
+        readingLength = false;
+        parser.fixedSizeMode(length);
+      } else {
+        readingLength = true;
+        parser.fixedSizeMode(Integer.BYTES);
+        frame(buffer);
+      }
+    }
+
+    private void frame(Buffer buffer) {
+      long seq = buffer.getLong(0);
+      StepEvent event;
+      try {
+        event = StepEventFrame.decode(ByteBuffer.wrap(buffer.getBytes(Long.BYTES, buffer.length())));
+      } catch (IllegalArgumentException e) {
+        ack(seq, INVALID);
+        return;
+      }
+      if (++inFlight == maxInFlight) {
+        parser.pause();
+      }
+      stepsPublisher.publish(event)
+        .onItem().transform(v -> OK)
+        .onFailure().recoverWithItem(err -> (err instanceof IngestionOverloadedException) ? OVERLOADED : FAILED)
+        .emitOn(context::runOnContext)
+        .subscribe().with(status -> {
+          ack(seq, status);
+          if (inFlight-- == maxInFlight) {
+            parser.resume();
+          }
+        });
+    }
+
+    private void ack(long seq, byte status) {
+      socket.writeAndForget(Buffer.buffer(ACK_LENGTH).appendLong(seq).appendByte(status));
+    }
+  }
+}
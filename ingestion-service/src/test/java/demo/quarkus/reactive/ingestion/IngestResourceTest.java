@@ -1,6 +1,8 @@
 package demo.quarkus.reactive.ingestion;
 
+import com.sun.management.OperatingSystemMXBean;
 import io.quarkus.kafka.client.serialization.JsonObjectSerde;
+import io.quarkus.logging.Log;
 import io.quarkus.test.common.QuarkusTestResource;
 import io.quarkus.test.common.http.TestHTTPEndpoint;
 import io.quarkus.test.junit.QuarkusTest;
@@ -8,17 +10,21 @@ import io.quarkus.test.kafka.InjectKafkaCompanion;
 import io.quarkus.test.kafka.KafkaCompanionResource;
 import io.restassured.http.ContentType;
 import io.smallrye.reactive.messaging.kafka.companion.KafkaCompanion;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
 
 import static io.restassured.RestAssured.given;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 
 @QuarkusTest
 @TestHTTPEndpoint(IngestResource.class)
@@ -82,4 +88,177 @@ class IngestResourceTest {
       .fromTopics("incoming.steps", 1)
       .awaitNoRecords(Duration.ofSeconds(5));
   }
+
+  @Test
+  @DisplayName("Ingest the same JSON data twice over HTTP, and observe a single Kafka record")
+  void httpIngestDuplicate() {
+    JsonObject body = new JsonObject()
+      .put("deviceId", "dup")
+      .put("deviceSync", 1L)
+      .put("stepsCount", 50);
+
+    for (int i = 0; i < 2; i++) {
+      given()
+        .contentType(ContentType.JSON)
+        .body(body.encode())
+        .post()
+        .then()
+        .assertThat()
+        .statusCode(200);
+    }
+
+    List<ConsumerRecord<String, JsonObject>> records = companion.consume(JsonObject.class)
+      .fromTopics("incoming.steps", Duration.ofSeconds(5))
+      .awaitCompletion()
+      .getRecords();
+    assertThat(records).hasSize(1);
+
+    given()
+      .basePath("")
+      .get("/q/metrics")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .body(containsString("cache_gets_total{cache=\"device-syncs\",result=\"hit\"}"))
+      .body(containsString("ingestion_dedup_memory_bytes"));
+  }
+
+  @Test
+  @DisplayName("Ingest a binary frame over HTTP, and observe the same Kafka record as with JSON")
+  void httpFrameIngest() {
+    given()
+      .contentType(StepEventFrame.MEDIA_TYPE)
+      .body(StepEventFrame.encode(new StepEvent("456", 7L, 250)))
+      .post()
+      .then()
+      .assertThat()
+      .statusCode(200);
+
+    List<ConsumerRecord<String, JsonObject>> records = companion.consume(JsonObject.class)
+      .fromTopics("incoming.steps", 1)
+      .awaitCompletion()
+      .getRecords();
+
+    assertThat(records.getFirst().key()).isEqualTo("456");
+    JsonObject json = records.getFirst().value();
+    assertThat(json.getString("deviceId")).isEqualTo("456");
+    assertThat(json.getLong("deviceSync")).isEqualTo(7L);
+    assertThat(json.getInteger("stepsCount")).isEqualTo(250);
+  }
+
+  @Test
+  @DisplayName("Ingest a truncated binary frame over HTTP and observe no Kafka record")
+  void httpFrameIngestWrong() {
+    byte[] frame = StepEventFrame.encode(new StepEvent("456", 8L, 250));
+
+    given()
+      .contentType(StepEventFrame.MEDIA_TYPE)
+      .body(Arrays.copyOf(frame, frame.length - 1))
+      .post()
+      .then()
+      .assertThat()
+      .statusCode(400);
+
+    companion.consume(JsonObject.class)
+      .fromTopics("incoming.steps", 1)
+      .awaitNoRecords(Duration.ofSeconds(5));
+  }
+
+  @Test
+  @DisplayName("Ingest a JSON array of events over HTTP, and observe per-event results")
+  void httpBatchIngest() {
+    JsonArray body = new JsonArray()
+      .add(new JsonObject().put("deviceId", "456").put("deviceSync", 4L).put("stepsCount", 100))
+      .add(new JsonObject().put("deviceId", "").put("deviceSync", 5L).put("stepsCount", 100))
+      .add(new JsonObject().put("deviceId", "456").put("deviceSync", 6L).put("stepsCount", 300));
+
+    List<JsonObject> results = batchIngest(ContentType.JSON.toString(), body.encode());
+    assertThat(results).hasSize(3);
+    assertThat(results.stream().filter(result -> result.getInteger("status") == 200).map(result -> result.getLong("index")))
+      .containsExactlyInAnyOrder(0L, 2L);
+    JsonObject rejected = results.stream().filter(result -> result.getInteger("status") == 400).findFirst().orElseThrow();
+    assertThat(rejected.getLong("index")).isEqualTo(1L);
+    assertThat(rejected.getJsonArray("errors").getString(0)).startsWith("deviceId");
+
+    List<ConsumerRecord<String, JsonObject>> records = companion.consume(JsonObject.class)
+      .fromTopics("incoming.steps", 2)
+      .awaitCompletion()
+      .getRecords();
+    assertThat(records).extracting(record -> record.value().getLong("deviceSync")).containsExactly(4L, 6L);
+    assertThat(records).extracting(ConsumerRecord::key).containsOnly("456");
+  }
+
+  @Test
+  @DisplayName("Ingest a NDJSON stream of events over HTTP, including a malformed line")
+  void httpNdjsonBatchIngest() {
+    String body = """
+      {"deviceId": "789", "deviceSync": 1, "stepsCount": 10}
+      {"deviceId": "789", "deviceSync": 2, "stepsCount": 20}
+      {"deviceId": "789", "deviceSync":
+      """;
+
+    List<JsonObject> results = batchIngest("application/x-ndjson", body);
+    assertThat(results).hasSize(3);
+    assertThat(results.getLast().getInteger("status")).isEqualTo(400);
+    assertThat(results.getLast().getJsonArray("errors").getString(0)).startsWith("Malformed input");
+
+    companion.consume(JsonObject.class)
+      .fromTopics("incoming.steps", 2)
+      .awaitCompletion();
+  }
+
+  @Test
+  @DisplayName("Compare the throughput of single and batch ingestion")
+  void compareSingleAndBatchIngest() {
+    int events = 1000;
+    OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    long start = System.nanoTime();
+    long cpuStart = os.getProcessCpuTime();
+    for (int i = 0; i < events; i++) {
+      given()
+        .contentType(ContentType.JSON)
+        .body(new JsonObject().put("deviceId", "single").put("deviceSync", (long) i).put("stepsCount", 10).encode())
+        .post()
+        .then()
+        .statusCode(200);
+    }
+    report("single", events, start, cpuStart, os);
+
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < events; i++) {
+      body.append(new JsonObject().put("deviceId", "batch").put("deviceSync", (long) i).put("stepsCount", 10).encode()).append('\n');
+    }
+    start = System.nanoTime();
+    cpuStart = os.getProcessCpuTime();
+    List<JsonObject> results = batchIngest("application/x-ndjson", body.toString());
+    report("batch", events, start, cpuStart, os);
+    assertThat(results).hasSize(events).allMatch(result -> result.getInteger("status") == 200);
+
+    companion.consume(JsonObject.class)
+      .fromTopics("incoming.steps", 2 * events)
+      .awaitCompletion();
+  }
+
+  private static void report(String name, int events, long start, long cpuStart, OperatingSystemMXBean os) {
+    long elapsedMillis = Math.max(1L, (System.nanoTime() - start) / 1_000_000L);
+    long cpuMillis = (os.getProcessCpuTime() - cpuStart) / 1_000_000L;
+    Log.info(name + " ingestion: " + (events * 1000L / elapsedMillis) + " events/s, " + cpuMillis + "ms of CPU (test client included)");
+  }
+
+  private static List<JsonObject> batchIngest(String contentType, String body) {
+    String response = given()
+      .contentType(contentType)
+      .body(body)
+      .post("/batch")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .asString();
+    return response.lines()
+      .filter(line -> !line.isBlank())
+      .map(JsonObject::new)
+      .toList();
+  }
 }
@@ -0,0 +1,8 @@
+package demo.quarkus.reactive.ingestion;
+
+import io.quarkus.test.junit.QuarkusIntegrationTest;
+
+@QuarkusIntegrationTest
+class IngestionOverloadIT extends IngestionOverloadTest {
+  // Execute the same tests but in packaged mode.
+}
@@ -0,0 +1,73 @@
+package demo.quarkus.reactive.ingestion;
+
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.kafka.KafkaCompanionResource;
+import io.restassured.http.ContentType;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+@QuarkusTest
+@TestProfile(IngestionOverloadTest.Overloaded.class)
+@QuarkusTestResource(KafkaCompanionResource.class)
+class IngestionOverloadTest {
+
+  // No event can be in flight, so that every event gets rejected
+  public static class Overloaded implements QuarkusTestProfile {
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+      return Map.of(
+        "ingestion.max-in-flight", "0",
+        "ingestion.retry-after", "1500ms");
+    }
+  }
+
+  @Test
+  @DisplayName("Ingest data past the in-flight threshold, and observe a 429 response with a retry hint")
+  void overloaded() {
+    JsonObject event = new JsonObject()
+      .put("deviceId", "456")
+      .put("deviceSync", 3L)
+      .put("stepsCount", 125);
+
+    given()
+      .contentType(ContentType.JSON)
+      .body(event.encode())
+      .post("/ingest")
+      .then()
+      .assertThat()
+      .statusCode(429)
+      .header("Retry-After", equalTo("2"));
+
+    String results = given()
+      .contentType(ContentType.JSON)
+      .body(new JsonArray().add(event).encode())
+      .post("/ingest/batch")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .asString();
+    assertThat(new JsonObject(results.strip()).getInteger("status")).isEqualTo(429);
+
+    given()
+      .get("/q/metrics")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .body(containsString("ingestion_steps_rejected_total{reason=\"overloaded\"} 2.0"))
+      .body(containsString("ingestion_steps_in_flight 0.0"));
+  }
+}
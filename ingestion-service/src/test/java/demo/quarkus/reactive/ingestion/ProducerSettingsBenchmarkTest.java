@@ -0,0 +1,116 @@
+package demo.quarkus.reactive.ingestion;
+
+import io.quarkus.kafka.client.serialization.ObjectMapperSerializer;
+import io.quarkus.logging.Log;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.kafka.InjectKafkaCompanion;
+import io.quarkus.test.kafka.KafkaCompanionResource;
+import io.smallrye.reactive.messaging.kafka.companion.KafkaCompanion;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Load harness for the producer settings of application.properties, against the dev services broker, run with
+// -Pbenchmark
+@QuarkusTest
+@QuarkusTestResource(KafkaCompanionResource.class)
+@Tag("benchmark")
+class ProducerSettingsBenchmarkTest {
+
+  private static final String TOPIC = "producer.benchmark";
+  private static final int RECORDS = 50_000;
+  private static final int DEVICES = 1_000;
+  // Concurrent clients, each waiting for the acknowledgement of its event before sending the next one
+  private static final int CLIENTS = 128;
+
+  @InjectKafkaCompanion
+  KafkaCompanion companion;
+
+  @Test
+  @DisplayName("Compare the throughput and p99 latency of step events publication with different producer settings")
+  void publish() throws InterruptedException {
+    Map<String, Object> defaults = Map.of(
+      ProducerConfig.ACKS_CONFIG, "all",
+      ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+    Map<String, Object> batched = with(defaults, Map.of(
+      ProducerConfig.LINGER_MS_CONFIG, 20,
+      ProducerConfig.BATCH_SIZE_CONFIG, 131072));
+
+    run("default", defaults);
+    run("batched", batched);
+    run("batched+lz4", with(batched, Map.of(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4")));
+    run("batched+zstd", with(batched, Map.of(ProducerConfig.COMPRESSION_TYPE_CONFIG, "zstd")));
+  }
+
+  private void run(String name, Map<String, Object> settings) throws InterruptedException {
+    Map<String, Object> config = new HashMap<>(companion.getCommonClientConfig());
+    config.putAll(settings);
+    config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, companion.getBootstrapServers());
+    try (KafkaProducer<String, StepEvent> producer = new KafkaProducer<>(config, new StringSerializer(), new ObjectMapperSerializer<>())) {
+      // Warm-up (connections, metadata, JIT)
+      send(producer, RECORDS / 10, RECORDS);
+      send(producer, RECORDS / 10, CLIENTS);
+      report(name, "fire-and-forget", send(producer, RECORDS, RECORDS));
+      report(name, "await-ack", send(producer, RECORDS, CLIENTS));
+    }
+  }
+
+  private record Result(long elapsedNanos, long[] latencies) {
+  }
+
+  // Sends with at most the given number of records waiting for their acknowledgement
+  private static Result send(KafkaProducer<String, StepEvent> producer, int records, int maxInFlight) throws InterruptedException {
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    long[] latencies = new long[records];
+    AtomicInteger failures = new AtomicInteger();
+    long start = System.nanoTime();
+    for (int i = 0; i < records; i++) {
+      inFlight.acquire();
+      String deviceId = "device-" + (i % DEVICES);
+      int index = i;
+      long sentAt = System.nanoTime();
+      producer.send(new ProducerRecord<>(TOPIC, deviceId, new StepEvent(deviceId, (long) i, 100)), (metadata, err) -> {
+        latencies[index] = System.nanoTime() - sentAt;
+        if (err != null) {
+          failures.incrementAndGet();
+        }
+        inFlight.release();
+      });
+    }
+    assertThat(inFlight.tryAcquire(maxInFlight, 1, TimeUnit.MINUTES)).isTrue();
+    long elapsedNanos = System.nanoTime() - start;
+    assertThat(failures.get()).isZero();
+    return new Result(elapsedNanos, latencies);
+  }
+
+  private static void report(String name, String mode, Result result) {
+    long[] latencies = result.latencies().clone();
+    Arrays.sort(latencies);
+    long p50 = latencies[latencies.length / 2];
+    long p99 = latencies[(int) (latencies.length * 0.99)];
+    long throughput = latencies.length * 1_000_000_000L / Math.max(1L, result.elapsedNanos());
+    Log.info(name + " (" + mode + "): " + throughput + " records/s, p50=" + Duration.ofNanos(p50).toMillis() + "ms" +
+      " p99=" + Duration.ofNanos(p99).toMillis() + "ms");
+  }
+
+  private static Map<String, Object> with(Map<String, Object> base, Map<String, Object> overrides) {
+    Map<String, Object> settings = new HashMap<>(base);
+    settings.putAll(overrides);
+    return settings;
+  }
+}
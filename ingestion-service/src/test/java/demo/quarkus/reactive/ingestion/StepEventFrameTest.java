@@ -0,0 +1,46 @@
+package demo.quarkus.reactive.ingestion;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StepEventFrameTest {
+
+  @Test
+  @DisplayName("Encode and decode a step event, and compare with its JSON size")
+  void roundTrip() {
+    StepEvent event = new StepEvent("a1b2c3d4-e5f6", 1712345678L, 1234);
+
+    byte[] frame = StepEventFrame.encode(event);
+    assertThat(StepEventFrame.decode(frame)).isEqualTo(event);
+
+    byte[] json = JsonObject.mapFrom(event).encode().getBytes(StandardCharsets.UTF_8);
+    assertThat(frame).hasSize(14 + event.deviceId().length());
+    assertThat(frame.length).isLessThan(json.length / 2);
+  }
+
+  @Test
+  @DisplayName("Reject frames breaking the step event rules")
+  void invalidFrames() {
+    byte[] frame = StepEventFrame.encode(new StepEvent("123", 1L, 10));
+
+    byte[] unsupported = frame.clone();
+    unsupported[0] = 2;
+    assertThatThrownBy(() -> StepEventFrame.decode(unsupported)).hasMessageContaining("version");
+
+    byte[] truncated = ByteBuffer.allocate(frame.length - 1).put(frame, 0, frame.length - 1).array();
+    assertThatThrownBy(() -> StepEventFrame.decode(truncated)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> StepEventFrame.decode(new byte[]{StepEventFrame.VERSION})).hasMessage("Truncated frame");
+
+    assertThatThrownBy(() -> StepEventFrame.decode(StepEventFrame.encode(new StepEvent(" ", 1L, 10))))
+      .hasMessageContaining("deviceId");
+    assertThatThrownBy(() -> StepEventFrame.decode(StepEventFrame.encode(new StepEvent("123", 1L, -1))))
+      .hasMessageContaining("stepsCount");
+  }
+}
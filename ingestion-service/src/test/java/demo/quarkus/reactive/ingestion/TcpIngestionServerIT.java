@@ -0,0 +1,8 @@
+package demo.quarkus.reactive.ingestion;
+
+import io.quarkus.test.junit.QuarkusIntegrationTest;
+
+@QuarkusIntegrationTest
+class TcpIngestionServerIT extends TcpIngestionServerTest {
+  // Execute the same tests but in packaged mode.
+}
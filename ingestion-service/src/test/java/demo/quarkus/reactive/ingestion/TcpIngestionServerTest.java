@@ -0,0 +1,132 @@
+package demo.quarkus.reactive.ingestion;
+
+import io.quarkus.kafka.client.serialization.JsonObjectSerde;
+import io.quarkus.logging.Log;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.kafka.InjectKafkaCompanion;
+import io.quarkus.test.kafka.KafkaCompanionResource;
+import io.smallrye.reactive.messaging.kafka.companion.KafkaCompanion;
+import io.vertx.core.json.JsonObject;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@QuarkusTest
+@QuarkusTestResource(KafkaCompanionResource.class)
+class TcpIngestionServerTest {
+
+  private static final int PORT = 3012;
+
+  @InjectKafkaCompanion
+  KafkaCompanion companion;
+
+  @BeforeEach
+  void setUp() {
+    companion.registerSerde(JsonObject.class, new JsonObjectSerde());
+    for (String topic : companion.topics().list()) {
+      if ("incoming.steps".equals(topic)) {
+        companion.topics().clear(topic);
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Pipeline frames over a TCP connection, and observe per-frame acknowledgements and Kafka records")
+  void tcpIngest() throws IOException {
+    try (Socket socket = new Socket("localhost", PORT)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+      writeFrame(out, 1L, StepEventFrame.encode(new StepEvent("tcp", 1L, 100)));
+      writeFrame(out, 2L, StepEventFrame.encode(new StepEvent("tcp", 2L, -1)));
+      writeFrame(out, 3L, StepEventFrame.encode(new StepEvent("tcp", 3L, 300)));
+      out.flush();
+
+      Map<Long, Byte> acks = readAcks(in, 3);
+      assertThat(acks).containsExactlyInAnyOrderEntriesOf(Map.of(
+        1L, TcpIngestionServer.OK,
+        2L, TcpIngestionServer.INVALID,
+        3L, TcpIngestionServer.OK));
+    }
+
+    List<ConsumerRecord<String, JsonObject>> records = companion.consume(JsonObject.class)
+      .fromTopics("incoming.steps", 2)
+      .awaitCompletion()
+      .getRecords();
+    assertThat(records).extracting(record -> record.value().getLong("deviceSync")).containsExactly(1L, 3L);
+    assertThat(records).extracting(ConsumerRecord::key).containsOnly("tcp");
+  }
+
+  @Test
+  @DisplayName("Send a frame with an invalid length, and observe that the connection gets closed")
+  void tcpIngestWrongLength() throws IOException {
+    try (Socket socket = new Socket("localhost", PORT)) {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.writeInt(Integer.MAX_VALUE);
+      out.flush();
+
+      assertThat(socket.getInputStream().read()).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  @DisplayName("Measure the throughput of TCP ingestion")
+  void tcpIngestThroughput() throws IOException {
+    int events = 10_000;
+    long start = System.nanoTime();
+    try (Socket socket = new Socket("localhost", PORT)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      // The server stops reading when too many frames are in flight, so acknowledgements are read concurrently
+      Thread writer = Thread.ofVirtual().start(() -> {
+        try {
+          for (int i = 0; i < events; i++) {
+            writeFrame(out, i, StepEventFrame.encode(new StepEvent("tcp-load", (long) i, 10)));
+          }
+          out.flush();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      });
+      Map<Long, Byte> acks = readAcks(in, events);
+      writer.join();
+      assertThat(acks).hasSize(events).allSatisfy((seq, status) -> assertThat(status).isEqualTo(TcpIngestionServer.OK));
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    long elapsedMillis = Math.max(1L, (System.nanoTime() - start) / 1_000_000L);
+    Log.info("tcp ingestion: " + (events * 1000L / elapsedMillis) + " events/s");
+
+    companion.consume(JsonObject.class)
+      .fromTopics("incoming.steps", events)
+      .awaitCompletion();
+  }
+
+  private static void writeFrame(DataOutputStream out, long seq, byte[] frame) throws IOException {
+    out.writeInt(Long.BYTES + frame.length);
+    out.writeLong(seq);
+    out.write(frame);
+  }
+
+  private static Map<Long, Byte> readAcks(DataInputStream in, int count) throws IOException {
+    Map<Long, Byte> acks = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      acks.put(in.readLong(), in.readByte());
+    }
+    return acks;
+  }
+}
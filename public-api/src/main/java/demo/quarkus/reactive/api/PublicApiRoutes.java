@@ -100,6 +100,11 @@ public class PublicApiRoutes {
       .handler(this::checkUser)
       .handler(this::fetchTotalSteps);
 
+    router.get("/:username/series")
+      .handler(jwtHandler)
+      .handler(this::checkUser)
+      .handler(this::fetchStepsSeries);
+
     router.get("/:username/:year/:month")
       .handler(jwtHandler)
       .handler(this::checkUser)
@@ -146,6 +151,25 @@ public class PublicApiRoutes {
       );
   }
 
+  private void fetchStepsSeries(RoutingContext rc) {
+    String username = rc.pathParam("username");
+    // from, to and bucket are passed as-is to the activity service
+    String query = rc.request().query();
+    fetchDeviceId(username)
+      .onItem().transformToUni(deviceId -> webClient
+        .get(activityServicePort, activityServiceHost, "/device/" + deviceId + "/series" + (query != null ? "?" + query : ""))
+        .expect(ResponsePredicate.SC_OK)
+        .as(BodyCodec.jsonArray())
+        .send()
+        .onItem().transform(HttpResponse::body))
+      .subscribe().with(
+        res -> rc.response()
+          .putHeader("Content-Type", "application/json")
+          .endAndForget(res.encode()),
+        err -> handleError(rc, err)
+      );
+  }
+
   private static void forwardJsonPayload(RoutingContext rc, JsonObject res) {
     rc.response()
       .putHeader("Content-Type", "application/json")
@@ -5,6 +5,7 @@ import io.restassured.http.ContentType;
 import io.restassured.path.json.JsonPath;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.vertx.core.AbstractVerticle;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.core.Vertx;
 import io.vertx.mutiny.ext.web.Router;
@@ -251,6 +252,34 @@ class PublicApiRoutesTest {
       .statusCode(403);
   }
 
+  @Test
+  @Order(8)
+  @DisplayName("Check some user steps series")
+  void checkSomeUserSeries() {
+    JsonPath jsonPath = given()
+      .headers("Authorization", "Bearer " + tokens.get("Foo"))
+      .queryParam("from", "2019-06-14")
+      .queryParam("to", "2019-06-16")
+      .queryParam("bucket", "day")
+      .get("/Foo/series")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .contentType(ContentType.JSON)
+      .extract()
+      .jsonPath();
+
+    assertThat(jsonPath.getList("start", String.class)).containsExactly("2019-06-14T00:00", "2019-06-15T00:00");
+    assertThat(jsonPath.getList("count", Integer.class)).containsExactly(1250, 5005);
+
+    given()
+      .headers("Authorization", "Bearer " + tokens.get("Foo"))
+      .get("/Bar/series")
+      .then()
+      .assertThat()
+      .statusCode(403);
+  }
+
   private static class MockUserProfileServer extends AbstractVerticle {
 
     private final Map<String, JsonObject> registrations = new HashMap<>();
@@ -319,6 +348,7 @@ class PublicApiRoutesTest {
     public Uni<Void> asyncStart() {
       Router router = Router.router(vertx);
       router.get("/device/:deviceId/total").handler(this::total);
+      router.get("/device/:deviceId/series").handler(this::series);
       router.get("/device/:deviceId/:year/:month").handler(this::stepsOnMonth);
       router.get("/device/:deviceId/:year/:month/:day").handler(this::stepsOnDay);
       return vertx.createHttpServer()
@@ -334,6 +364,15 @@ class PublicApiRoutesTest {
         .endAndForget(jsonObject.encode());
     }
 
+    private void series(RoutingContext rc) {
+      JsonArray jsonArray = new JsonArray()
+        .add(new JsonObject().put("start", rc.queryParams().get("from") + "T00:00").put("count", 1250))
+        .add(new JsonObject().put("start", "2019-06-15T00:00").put("count", 5005));
+      rc.response()
+        .putHeader(CONTENT_TYPE, "application/json")
+        .endAndForget(jsonArray.encode());
+    }
+
     private void stepsOnMonth(RoutingContext rc) {
       JsonObject jsonObject = new JsonObject().put("count", 6255);
       rc.response()
@@ -0,0 +1,5 @@
+package demo.quarkus.reactive.user.profile.replica;
+
+// A user profile as published by user-profile-service on the user.profiles topic, keyed by device identifier
+public record Profile(String username, String email, String deviceId, String city, Boolean makePublic) {
+}
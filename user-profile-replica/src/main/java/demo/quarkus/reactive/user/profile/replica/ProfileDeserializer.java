@@ -0,0 +1,10 @@
+package demo.quarkus.reactive.user.profile.replica;
+
+import io.quarkus.kafka.client.serialization.ObjectMapperDeserializer;
+
+public class ProfileDeserializer extends ObjectMapperDeserializer<Profile> {
+
+  public ProfileDeserializer() {
+    super(Profile.class);
+  }
+}
@@ -0,0 +1,51 @@
+package demo.quarkus.reactive.user.profile.replica;
+
+import io.quarkus.logging.Log;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.eclipse.microprofile.reactive.messaging.Incoming;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory copy of the user profiles, kept up to date from the compacted user.profiles topic.
+//
+// Every instance reads the whole topic from its beginning on startup (see META-INF/microprofile-config.properties),
+// so lookups miss the profiles that have not been read yet: callers then fall back to user-profile-service.
+@ApplicationScoped
+public class ProfileReplica {
+
+  private final Map<String, Profile> byDeviceId = new ConcurrentHashMap<>();
+  private final Map<String, Profile> byUsername = new ConcurrentHashMap<>();
+
+  @Incoming("profile-changes")
+  public void apply(ConsumerRecord<String, Profile> record) {
+    String deviceId = record.key();
+    Profile profile = record.value();
+    if (deviceId == null) {
+      Log.warn("Ignoring a profile change without key at offset " + record.offset());
+      return;
+    }
+    // Tombstones remove the device profile
+    Profile former = (profile != null) ? byDeviceId.put(deviceId, profile) : byDeviceId.remove(deviceId);
+    if (former != null && (profile == null || !former.username().equals(profile.username()))) {
+      byUsername.remove(former.username(), former);
+    }
+    if (profile != null) {
+      byUsername.put(profile.username(), profile);
+    }
+  }
+
+  public Optional<Profile> findByDeviceId(String deviceId) {
+    return Optional.ofNullable(byDeviceId.get(deviceId));
+  }
+
+  public Optional<Profile> findByUsername(String username) {
+    return Optional.ofNullable(byUsername.get(username));
+  }
+
+  public int size() {
+    return byDeviceId.size();
+  }
+}
@@ -0,0 +1,44 @@
+package demo.quarkus.reactive.user.profile.replica;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProfileReplicaTest {
+
+  private long offset;
+
+  @Test
+  @DisplayName("Apply profile changes, and observe the latest profiles by device and by username")
+  void applyChanges() {
+    ProfileReplica replica = new ProfileReplica();
+    replica.apply(record("a1b2c3", new Profile("abc", "abc@email.me", "a1b2c3", "Lyon", true)));
+    replica.apply(record("d4e5f6", new Profile("def", "def@email.me", "d4e5f6", "Paris", false)));
+    replica.apply(record("a1b2c3", new Profile("abc", "abc@email.me", "a1b2c3", "Nantes", true)));
+
+    assertThat(replica.size()).isEqualTo(2);
+    assertThat(replica.findByDeviceId("a1b2c3")).get().extracting(Profile::city).isEqualTo("Nantes");
+    assertThat(replica.findByUsername("abc")).get().extracting(Profile::city).isEqualTo("Nantes");
+    assertThat(replica.findByDeviceId("404")).isEmpty();
+  }
+
+  @Test
+  @DisplayName("Apply a tombstone, and observe that the profile is gone")
+  void applyTombstone() {
+    ProfileReplica replica = new ProfileReplica();
+    replica.apply(record("a1b2c3", new Profile("abc", "abc@email.me", "a1b2c3", "Lyon", true)));
+    replica.apply(record("a1b2c3", null));
+    replica.apply(record(null, new Profile("def", "def@email.me", "d4e5f6", "Paris", false)));
+
+    assertThat(replica.size()).isZero();
+    assertThat(replica.findByDeviceId("a1b2c3")).isEmpty();
+    assertThat(replica.findByUsername("abc")).isEmpty();
+    assertThat(replica.findByUsername("def")).isEmpty();
+  }
+
+  private ConsumerRecord<String, Profile> record(String deviceId, Profile profile) {
+    return new ConsumerRecord<>("user.profiles", 0, offset++, deviceId, profile);
+  }
+}
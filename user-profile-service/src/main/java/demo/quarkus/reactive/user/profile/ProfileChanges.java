@@ -0,0 +1,63 @@
+package demo.quarkus.reactive.user.profile;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.reactive.messaging.MutinyEmitter;
+import io.smallrye.reactive.messaging.kafka.KafkaRecord;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.reactive.messaging.Channel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Publishes the state of a profile after each change, keyed by device identifier, so that other services can keep a
+// replica of the profiles (see the user-profile-replica library)
+@ApplicationScoped
+public class ProfileChanges {
+
+  @Inject
+  @Channel("profile-changes")
+  MutinyEmitter<UserProfileFetch> emitter;
+
+  @ConfigProperty(name = "mp.messaging.outgoing.profile-changes.topic")
+  String topic;
+
+  @ConfigProperty(name = "kafka.bootstrap.servers", defaultValue = "localhost:9092")
+  String bootstrapServers;
+
+  // The topic only needs the last profile of each device, it has to be compacted before the first record gets written
+  void createTopic(@Observes StartupEvent ev) {
+    NewTopic newTopic = new NewTopic(topic, Optional.empty(), Optional.empty())
+      .configs(Map.of(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT));
+    try (Admin admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers))) {
+      admin.createTopics(List.of(newTopic)).all().get(10, TimeUnit.SECONDS);
+      Log.info("Created the compacted " + topic + " topic");
+    } catch (ExecutionException e) {
+      if (!(e.getCause() instanceof TopicExistsException)) {
+        Log.warn("Could not create the " + topic + " topic", e.getCause());
+      }
+    } catch (Exception e) {
+      Log.warn("Could not create the " + topic + " topic", e);
+    }
+  }
+
+  // The change has been committed already: a failed publication is only logged, and fixed by the next change of the
+  // profile
+  public Uni<Void> publish(UserProfileFetch profile) {
+    return emitter.sendMessage(KafkaRecord.of(profile.deviceId(), profile))
+      .onFailure().invoke(err -> Log.error("Failed to publish the profile of " + profile.username(), err))
+      .onFailure().recoverWithNull();
+  }
+}
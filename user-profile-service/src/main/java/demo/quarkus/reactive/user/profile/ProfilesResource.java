@@ -0,0 +1,32 @@
+package demo.quarkus.reactive.user.profile;
+
+import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Uni;
+import jakarta.inject.Inject;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+import java.util.List;
+
+@Path("profiles")
+public class ProfilesResource {
+
+  @Inject
+  UserProfileRepository repository;
+
+  // Profiles of many users, unknown users are left out of the response
+  @Path("bulk")
+  @POST
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Uni<List<UserProfileFetch>> fetchUsers(@NotNull @Size(max = WhoOwnsResource.BULK_MAX_SIZE) List<@NotNull String> usernames) {
+    Log.info("Fetching profiles of " + usernames.size() + " users");
+
+    return repository.findByUsernames(usernames);
+  }
+}
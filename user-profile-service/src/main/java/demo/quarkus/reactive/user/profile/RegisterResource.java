@@ -15,6 +15,9 @@ public class RegisterResource {
   @Inject
   UserProfileRepository repository;
 
+  @Inject
+  ProfileChanges profileChanges;
+
   @POST
   @Consumes(MediaType.APPLICATION_JSON)
   @Produces(MediaType.APPLICATION_JSON)
@@ -22,6 +25,7 @@ public class RegisterResource {
     Log.info("Registering " + userProfile.username);
 
     return repository.save(userProfile)
+      .call(saved -> profileChanges.publish(UserProfileFetch.from(saved)))
       .replaceWith(RestResponse.<Void>ok())
       .onFailure(RegisterResource::isDuplicateError).transform(RegisterResource::toConflict);
   }
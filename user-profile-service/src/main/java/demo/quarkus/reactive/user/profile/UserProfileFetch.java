@@ -1,4 +1,8 @@
 package demo.quarkus.reactive.user.profile;
 
 public record UserProfileFetch(String username, String email, String deviceId, String city, Boolean makePublic) {
+
+  static UserProfileFetch from(UserProfile userProfile) {
+    return new UserProfileFetch(userProfile.username, userProfile.email, userProfile.deviceId, userProfile.city, userProfile.makePublic);
+  }
 }
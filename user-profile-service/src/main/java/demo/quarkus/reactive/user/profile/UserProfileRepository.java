@@ -5,6 +5,8 @@ import io.quarkus.hibernate.reactive.panache.common.WithTransaction;
 import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.ApplicationScoped;
 
+import java.util.List;
+
 @ApplicationScoped
 public class UserProfileRepository implements PanacheRepository<UserProfile> {
 
@@ -24,20 +26,37 @@ public class UserProfileRepository implements PanacheRepository<UserProfile> {
       .singleResult();
   }
 
+  // Returns the updated profile, once committed
   @WithTransaction
-  public Uni<Void> update(String username, UserProfileUpdate update) {
+  public Uni<UserProfileFetch> update(String username, UserProfileUpdate update) {
     return find("username", username).singleResult()
-      .onItem().ifNotNull().invoke(entity -> {
+      .onItem().ifNotNull().transform(entity -> {
         // Managed entity update
         update.applyTo(entity);
-      })
-      .replaceWithVoid();
+        return UserProfileFetch.from(entity);
+      });
   }
 
   public Uni<UserProfileOwner> findByDeviceId(String deviceId) {
     return find("deviceId", deviceId).project(UserProfileOwner.class).singleResult();
   }
 
+  // Owner and profile of many devices in one query, unknown devices are left out
+  public Uni<List<UserProfileFetch>> findByDeviceIds(List<String> deviceIds) {
+    if (deviceIds.isEmpty()) {
+      return Uni.createFrom().item(List.of());
+    }
+    return find("deviceId in ?1", deviceIds).project(UserProfileFetch.class).list();
+  }
+
+  // Profiles of many users in one query, unknown users are left out
+  public Uni<List<UserProfileFetch>> findByUsernames(List<String> usernames) {
+    if (usernames.isEmpty()) {
+      return Uni.createFrom().item(List.of());
+    }
+    return find("username in ?1", usernames).project(UserProfileFetch.class).list();
+  }
+
   public Uni<Boolean> authenticate(Credentials credentials) {
     return find("username", credentials.username()).singleResult()
       // Awful, don't persist clear text password in a production database
@@ -15,6 +15,9 @@ public class UserProfileResource {
   @Inject
   UserProfileRepository repository;
 
+  @Inject
+  ProfileChanges profileChanges;
+
   @GET
   @Produces(MediaType.APPLICATION_JSON)
   public Uni<UserProfileFetch> fetchUser(String username) {
@@ -30,6 +33,8 @@ public class UserProfileResource {
   public Uni<RestResponse<Void>> updateUser(String username, @Valid UserProfileUpdate update) {
     Log.info("Updating profile of " + username);
 
-    return repository.update(username, update).replaceWith(RestResponse.ok());
+    return repository.update(username, update)
+      .call(profileChanges::publish)
+      .replaceWith(RestResponse.ok());
   }
 }
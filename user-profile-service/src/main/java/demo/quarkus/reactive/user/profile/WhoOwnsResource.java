@@ -4,15 +4,23 @@ import io.quarkus.logging.Log;
 import io.smallrye.mutiny.Uni;
 import jakarta.inject.Inject;
 import jakarta.persistence.NoResultException;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.MediaType;
 
+import java.util.List;
+
 @Path("owns")
 public class WhoOwnsResource {
 
+  static final int BULK_MAX_SIZE = 1000;
+
   @Inject
   UserProfileRepository repository;
 
@@ -25,4 +33,15 @@ public class WhoOwnsResource {
     return repository.findByDeviceId(deviceId)
       .onFailure(NoResultException.class).transform(ignored -> new WebApplicationException(404));
   }
+
+  // Owners of many devices, along with their profile, so that callers can enrich a batch of events at once
+  @Path("bulk")
+  @POST
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Uni<List<UserProfileFetch>> whoOwnsBulk(@NotNull @Size(max = BULK_MAX_SIZE) List<@NotNull String> deviceIds) {
+    Log.info("Checking who owns " + deviceIds.size() + " devices");
+
+    return repository.findByDeviceIds(deviceIds);
+  }
 }
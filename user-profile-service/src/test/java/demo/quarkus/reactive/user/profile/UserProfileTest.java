@@ -1,28 +1,42 @@
 package demo.quarkus.reactive.user.profile;
 
+import io.quarkus.kafka.client.serialization.JsonObjectSerde;
 import io.quarkus.test.common.QuarkusTestResource;
 import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.kafka.InjectKafkaCompanion;
+import io.quarkus.test.kafka.KafkaCompanionResource;
 import io.restassured.http.ContentType;
 import io.restassured.path.json.JsonPath;
+import io.smallrye.reactive.messaging.kafka.companion.KafkaCompanion;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.pgclient.PgPool;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static io.restassured.RestAssured.given;
 import static io.restassured.RestAssured.with;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 
 @QuarkusTest
 @QuarkusTestResource(PgPoolTestResource.class)
+@QuarkusTestResource(KafkaCompanionResource.class)
 class UserProfileTest {
 
+  @InjectKafkaCompanion
+  KafkaCompanion companion;
+
   PgPool pgPool;
 
   @BeforeEach
   void setUp() {
     pgPool.query("TRUNCATE TABLE UserProfile").execute().await().indefinitely();
+    companion.registerSerde(JsonObject.class, new JsonObjectSerde());
   }
 
   private JsonObject basicUser() {
@@ -311,4 +325,95 @@ class UserProfileTest {
       .assertThat()
       .statusCode(404);
   }
+
+  @Test
+  @DisplayName("Register then update a user, and observe the profile changes on Kafka")
+  void publishProfileChanges() {
+    // The Kafka topic outlives the database, hence a device id of its own
+    String deviceId = "cdc-" + System.nanoTime();
+    JsonObject user = basicUser()
+      .put("username", "cdc")
+      .put("deviceId", deviceId);
+
+    with()
+      .contentType(ContentType.JSON)
+      .accept(ContentType.JSON)
+      .body(user.encode())
+      .post("/register");
+
+    with()
+      .contentType(ContentType.JSON)
+      .body(new JsonObject().put("city", "Nevers").encode())
+      .put("/cdc")
+      .then()
+      .statusCode(200);
+
+    List<ConsumerRecord<String, JsonObject>> records = companion.consume(JsonObject.class)
+      .fromTopics("user.profiles", stream -> stream.select().where(record -> deviceId.equals(record.key())).select().first(2))
+      .awaitCompletion()
+      .getRecords();
+    assertThat(records).extracting(record -> record.value().getString("city")).containsExactly("Lyon", "Nevers");
+    assertThat(records).extracting(record -> record.value().getString("username")).containsOnly("cdc");
+    assertThat(records.getLast().value().getBoolean("makePublic")).isTrue();
+    assertThat(records.getLast().value().containsKey("password")).isFalse();
+  }
+
+  @Test
+  @DisplayName("Find the owners and profiles of many devices and users at once")
+  void bulk() {
+    JsonObject first = basicUser();
+    JsonObject second = basicUser()
+      .put("username", "def")
+      .put("email", "def@email.me")
+      .put("city", "Paris")
+      .put("deviceId", "d4e5f6")
+      .put("makePublic", false);
+    for (JsonObject user : List.of(first, second)) {
+      with()
+        .contentType(ContentType.JSON)
+        .accept(ContentType.JSON)
+        .body(user.encode())
+        .post("/register");
+    }
+
+    JsonPath owners = given()
+      .contentType(ContentType.JSON)
+      .accept(ContentType.JSON)
+      .body(new JsonArray().add("a1b2c3").add("d4e5f6").add("404").encode())
+      .when()
+      .post("/owns/bulk")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .jsonPath();
+    assertThat(owners.getList("deviceId")).containsExactlyInAnyOrder("a1b2c3", "d4e5f6");
+    assertThat(owners.getString("find { it.deviceId == 'd4e5f6' }.username")).isEqualTo("def");
+    assertThat(owners.getString("find { it.deviceId == 'd4e5f6' }.city")).isEqualTo("Paris");
+
+    JsonPath profiles = given()
+      .contentType(ContentType.JSON)
+      .accept(ContentType.JSON)
+      .body(new JsonArray().add("abc").add("404").encode())
+      .when()
+      .post("/profiles/bulk")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .extract()
+      .jsonPath();
+    assertThat(profiles.getList("username")).containsExactly("abc");
+    assertThat(profiles.getBoolean("[0].makePublic")).isTrue();
+
+    given()
+      .contentType(ContentType.JSON)
+      .accept(ContentType.JSON)
+      .body(new JsonArray().encode())
+      .when()
+      .post("/owns/bulk")
+      .then()
+      .assertThat()
+      .statusCode(200)
+      .body("size()", equalTo(0));
+  }
 }